@@ -0,0 +1,69 @@
+package Logic;
+
+/**
+ * A counter-based random source: draw number n for an actor is a hash
+ * of (seed, step, cell, n), where cell is the cell the actor starts the
+ * step in. The numbers an actor gets therefore do not depend on which
+ * thread runs it or on how many actors acted before it, only on where
+ * it stands. This lets the parallel engines be checked against the
+ * sequential one: the same actor takes the same random decisions.
+ *
+ * The engines call startStep and startCell; between two calls to
+ * startCell the draws follow the SplitMix64 sequence from the key of
+ * the cell. Like any RandomStream one instance serves one thread at a
+ * time, but split() returns a copy with the same keys, not a new
+ * stream, so every thread sees the same numbers for the same cell.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class CounterRandom extends RandomStream
+{
+    private static final long serialVersionUID = 1L;
+
+    // The master seed.
+    private final long seed;
+    // The seed and step together, mixed.
+    private long stepKey;
+
+    /**
+     * Create a counter-based source for step 0.
+     * @param seed The master seed.
+     */
+    public CounterRandom(long seed)
+    {
+        super(seed);
+        this.seed = seed;
+        startStep(0);
+    }
+
+    /**
+     * Key the following draws by a new step, at cell 0.
+     * @param step The number of the step.
+     */
+    public void startStep(long step)
+    {
+        stepKey = mix64(seed + mix64(step + GOLDEN_GAMMA));
+        startCell(0);
+    }
+
+    /**
+     * Restart the draws at the first number of the given cell.
+     * @param cell The cell index.
+     */
+    public void startCell(int cell)
+    {
+        setSeed(mix64(stepKey ^ (cell * GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Give another thread its own source with the same keys.
+     * @return A source for the same seed and step.
+     */
+    public RandomStream split()
+    {
+        CounterRandom copy = new CounterRandom(seed);
+        copy.stepKey = stepKey;
+        return copy;
+    }
+}
@@ -1,49 +1,277 @@
 package Logic;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
+ *
+ * The cells are kept in a FieldStorage as an entity id and a species
+ * code per cell, indexed by row * width + col. The field itself maps
+ * entity ids back to the objects that were placed.
+ *
+ * Next to the storage the field keeps a bitset with one bit per cell
+ * that is not empty, 64 cells to a word. The free neighbours of a cell
+ * are read from it as a mask of a few bits taken from three rows, and
+ * population and density queries skip the empty words. The bitsets
+ * are kept in tiles of 64 by 64 cells, one word per row of a tile, and
+ * a tile is only made when a cell in it first changes, so on a large
+ * field that is mostly empty they follow the area in use, like the
+ * TiledFieldStorage.
+ *
+ * Cells are indexed by an int, also in the storages, the occupants and
+ * checkpoints, so a field has at most MAX_CELLS cells, e.g. 46340 by
+ * 46340; a grid of 100,000 by 100,000 cells is refused. The 64-bit keys
+ * of Location and keyOf do not have that limit, so hash maps keyed by
+ * location stay fast on wide grids, but they do not make a larger field.
+ *
+ * The field is bounded unless it is made toroidal: then its edges wrap
+ * around, so the top row lies next to the bottom row, the left column
+ * next to the right one, and every cell has eight neighbours.
+ *
+ * Different threads may work on the field at the same time as long as
+ * they touch different cells; handing out and releasing entity ids is
+ * synchronized.
  * 
  * @author Caroline
  * @version 1.0
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
+    // The most cells a field can have: cells are indexed by an int, and
+    // there is no addressing by long.
+    public static final int MAX_CELLS = Integer.MAX_VALUE;
+
+    // The bitsets are kept in tiles of 64 by 64 cells.
+    private static final int BITS_SHIFT = 6;
+    private static final int BITS_MASK = (1 << BITS_SHIFT) - 1;
+    // The canonical locations are made in chunks of 256 cells, small
+    // enough that a sparse field does not fill a chunk per occupant.
+    private static final int LOCATION_CHUNK_SHIFT = 8;
+    private static final int LOCATION_CHUNK_MASK = (1 << LOCATION_CHUNK_SHIFT) - 1;
+
+    // Row and column offsets of the eight neighbours of a cell.
+    private static final int[] ROW_OFFSETS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] COL_OFFSETS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    // The bits of the eight neighbours in a mask of the three by three
+    // cells around a cell, see freeMask; bit 4 is the cell itself.
+    private static final int NEIGHBOUR_BITS = 0x1EF;
     
     // The depth and width of the field.
     private int depth, width;
-    // Storage for the animals.
-    private Object[][] field;
+    // Storage for the ids and species codes of the cells.
+    private FieldStorage storage;
+    // The placed objects, indexed by entity id. Slot 0 is never used.
+    // Only written while holding the lock of the field, and written
+    // again after every change, so a thread that reads the reference
+    // without the lock sees the latest array and what was stored in it.
+    private volatile Object[] occupants;
+    // Ids that have been released and can be handed out again.
+    private int[] freeIds;
+    // The number of ids in freeIds.
+    private int freeCount;
+    // The next id that has never been handed out.
+    private int nextId;
+    // The number of registered occupants per species code.
+    private int[] counts;
+    // The class seen for each species code, for reporting.
+    private Class<?>[] speciesClasses;
+    // Index offsets of the eight neighbours of a cell away from the edges.
+    private int[] indexOffsets;
+    // Whether the edges wrap around.
+    private boolean toroidal;
+    // For a toroidal field, the index offset of the row above, the same
+    // row and the row below, three per row, and likewise of the column to
+    // the left, the same column and the column to the right, three per
+    // column; the rows and columns on the edges wrap around. Null until
+    // the field is first made toroidal.
+    private int[] rowWrap, colWrap;
+    // Index offsets of the cells of a three by three mask, see freeMask.
+    private int[] maskOffsets;
+    // One bit per cell whose species changed since the last
+    // clearDirty, by tile of 64 by 64 cells in row order and then by
+    // row within the tile; null where no cell changed. Every row has
+    // words of its own, so threads working on different rows never
+    // write to the same word.
+    private long[][] dirty;
+    // Whether every cell counts as changed, as it does after clear().
+    private boolean allDirty;
+    // One bit per cell that is not empty, laid out as dirty. The bits
+    // after the last column of a row are never set.
+    private long[][] occupied;
+    // The number of tiles per row of tiles in dirty and occupied.
+    private int tilesPerRow;
+    // Guards making the tiles of dirty and occupied.
+    private final Object bitsLock = new Object();
+    // The Location of every cell that has been asked for, by chunk of
+    // cells; a chunk is made when one of its cells is first asked for.
+    private final Location[][] locations;
+    // Guards making locations, so every cell gets only one.
+    private final Object locationLock = new Object();
+    // One scratch neighbourhood per thread, so queries do not allocate.
+    private final ThreadLocal<Neighbourhood> scratch = new ThreadLocal<Neighbourhood>() {
+        protected Neighbourhood initialValue()
+        {
+            return new Neighbourhood();
+        }
+    };
 
     /**
      * Represent a field of the given dimensions.
      * @param depth The depth of the field.
      * @param width The width of the field.
+     * @throws IllegalArgumentException If a dimension is not greater than
+     *         zero or the field is too large for flat storage.
      */
     public Field(int depth, int width)
     {
+        this(depth, width, new FlatFieldStorage(checkSize(depth, width)));
+    }
+
+    /**
+     * Represent a field of the given dimensions on the given storage.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param storage Storage for depth * width cells.
+     * @throws IllegalArgumentException If a dimension is not greater than
+     *         zero or the field has more than MAX_CELLS cells.
+     */
+    public Field(int depth, int width, FieldStorage storage)
+    {
+        checkSize(depth, width);
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        this.storage = storage;
+        occupants = new Object[64];
+        freeIds = new int[16];
+        nextId = 1;
+        counts = new int[Species.COUNT];
+        speciesClasses = new Class<?>[Species.COUNT];
+        indexOffsets = new int[ROW_OFFSETS.length];
+        for(int i = 0; i < indexOffsets.length; i++) {
+            indexOffsets[i] = ROW_OFFSETS[i] * width + COL_OFFSETS[i];
+        }
+        maskOffsets = new int[9];
+        for(int bit = 0; bit < maskOffsets.length; bit++) {
+            maskOffsets[bit] = (bit / 3 - 1) * width + bit % 3 - 1;
+        }
+        locations = new Location[(int) (((long) depth * width + LOCATION_CHUNK_MASK) >>> LOCATION_CHUNK_SHIFT)][];
+        tilesPerRow = (width + BITS_MASK) >>> BITS_SHIFT;
+        int tiles = ((depth + BITS_MASK) >>> BITS_SHIFT) * tilesPerRow;
+        dirty = new long[tiles][];
+        occupied = new long[tiles][];
+        // The storage may already hold cells, e.g. a saved snapshot.
+        for(int index = storage.nextOccupied(0); index >= 0; index = storage.nextOccupied(index + 1)) {
+            int row = index / width;
+            int col = index - row * width;
+            bitsTile(occupied, row, col)[row & BITS_MASK] |= 1L << col;
+        }
     }
-    
+
     /**
-     * Empty the field.
+     * Check the dimensions of a field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @return The number of cells.
+     * @throws IllegalArgumentException If a dimension is not greater than
+     *         zero or the field has more than MAX_CELLS cells.
      */
-    public void clear()
+    public static int checkSize(int depth, int width)
     {
-        for(int row = 0; row < depth; row++) {
+        if(depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("The dimensions must be greater than zero: " + depth + "x" + width);
+        }
+        long cells = (long) depth * width;
+        if(cells > MAX_CELLS) {
+            throw new IllegalArgumentException("A field of " + depth + "x" + width + " has " + cells
+                                               + " cells, more than the " + MAX_CELLS + " a field can index");
+        }
+        return (int) cells;
+    }
+
+    /**
+     * Choose whether the edges of the field wrap around. A toroidal
+     * field must be at least three cells deep and wide, so the eight
+     * neighbours of a cell are different cells. Call this between steps.
+     * @param toroidal true to wrap around, false for a bounded field.
+     * @throws IllegalArgumentException If the field is too small to wrap.
+     */
+    public void setToroidal(boolean toroidal)
+    {
+        if(toroidal && rowWrap == null) {
+            if(depth < 3 || width < 3) {
+                throw new IllegalArgumentException("A toroidal field must be at least 3x3: " + depth + "x" + width);
+            }
+            int[] rows = new int[3 * depth];
+            for(int row = 0; row < depth; row++) {
+                rows[3 * row] = (row > 0 ? -1 : depth - 1) * width;
+                rows[3 * row + 2] = (row < depth - 1 ? 1 : 1 - depth) * width;
+            }
+            int[] cols = new int[3 * width];
             for(int col = 0; col < width; col++) {
-                field[row][col] = null;
+                cols[3 * col] = col > 0 ? -1 : width - 1;
+                cols[3 * col + 2] = col < width - 1 ? 1 : 1 - width;
+            }
+            rowWrap = rows;
+            colWrap = cols;
+        }
+        this.toroidal = toroidal;
+    }
+
+    /**
+     * @return true if the edges of the field wrap around.
+     */
+    public boolean isToroidal()
+    {
+        return toroidal;
+    }
+
+    /**
+     * Move the cells to another storage. Every cell is copied, and the
+     * field uses the new storage from then on. A field meant to be
+     * larger than the heap should rather be made on its storage with
+     * Field(depth, width, storage). Call this between steps.
+     * @param storage Storage for depth * width cells.
+     */
+    public synchronized void setStorage(FieldStorage storage)
+    {
+        int cells = depth * width;
+        for(int index = 0; index < cells; index++) {
+            int id = this.storage.getId(index);
+            byte species = this.storage.getSpecies(index);
+            // Only write what differs, so an empty mapped file stays sparse.
+            if(storage.getId(index) != id || storage.getSpecies(index) != species) {
+                storage.set(index, id, species);
             }
         }
+        this.storage = storage;
+    }
+
+    /**
+     * @return The storage of the cells.
+     */
+    public FieldStorage getStorage()
+    {
+        return storage;
+    }
+    
+    /**
+     * Empty the field.
+     */
+    public synchronized void clear()
+    {
+        storage.clearAll();
+        allDirty = true;
+        Arrays.fill(occupied, null);
+        Object[] slots = occupants;
+        Arrays.fill(slots, null);
+        occupants = slots;
+        Arrays.fill(counts, 0);
+        freeCount = 0;
+        nextId = 1;
     }
     
     /**
@@ -52,7 +280,20 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        clear(indexOf(location));
+    }
+
+    /**
+     * Clear the cell with the given index.
+     * @param index The cell index.
+     */
+    public void clear(int index)
+    {
+        releaseAnonymous(index);
+        if(storage.getSpecies(index) != Species.EMPTY) {
+            markChanged(index, Species.EMPTY);
+        }
+        storage.clear(index);
     }
     
     /**
@@ -65,7 +306,7 @@ public class Field
      */
     public void place(Object animal, int row, int col)
     {
-        place(animal, new Location(row, col));
+        place(animal, indexOf(row, col));
     }
     
     /**
@@ -77,7 +318,55 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, indexOf(location));
+    }
+
+    /**
+     * Place an animal in the cell with the given index.
+     * If there is already an animal in the cell it will be lost.
+     * An Occupant keeps its entity id until it is released; any
+     * other object gets an id that lasts as long as it is in the cell.
+     * @param animal The animal to be placed.
+     * @param index The cell index.
+     */
+    public void place(Object animal, int index)
+    {
+        releaseAnonymous(index);
+        int id;
+        byte species;
+        if(animal instanceof Occupant) {
+            Occupant occupant = (Occupant) animal;
+            id = occupant.getOccupantId();
+            species = occupant.getSpecies();
+            if(id == 0) {
+                id = allocateId(animal, species);
+                occupant.setOccupantId(id);
+            }
+        }
+        else {
+            species = Species.UNKNOWN;
+            id = allocateId(animal, species);
+        }
+        set(index, id, species);
+    }
+
+    /**
+     * Release the entity id of an occupant that has left the field
+     * for good, e.g. because it died or was eaten. The occupant's cell
+     * should already have been cleared. This also takes the occupant
+     * off the population count of its species.
+     * @param animal The animal to release.
+     */
+    public void release(Object animal)
+    {
+        if(animal instanceof Occupant) {
+            Occupant occupant = (Occupant) animal;
+            int id = occupant.getOccupantId();
+            if(id != 0) {
+                freeId(id, occupant.getSpecies());
+                occupant.setOccupantId(0);
+            }
+        }
     }
     
     /**
@@ -98,7 +387,321 @@ public class Field
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        return getObjectAt(indexOf(row, col));
+    }
+
+    /**
+     * Return the animal in the cell with the given index, if any.
+     * @param index The cell index.
+     * @return The animal in the cell, or null if there is none.
+     */
+    public Object getObjectAt(int index)
+    {
+        int id = storage.getId(index);
+        return id > 0 ? occupants[id] : null;
+    }
+
+    /**
+     * Place an entity of an entity store in a cell. Such an entity has
+     * no object; its number is stored as a negative id, so getObjectAt
+     * returns null for it. It is not counted, see countEntity.
+     * @param entity The entity's number in its store, 0 or more.
+     * @param species The species code of the entity.
+     * @param index The cell index.
+     */
+    public void placeEntity(int entity, byte species, int index)
+    {
+        releaseAnonymous(index);
+        set(index, -(entity + 1), species);
+    }
+
+    /**
+     * Return the number of the store entity in a cell.
+     * @param index The cell index.
+     * @return The entity's number in its store, or -1 if the cell does
+     *         not hold a store entity.
+     */
+    public int getEntityAt(int index)
+    {
+        int id = storage.getId(index);
+        return id < 0 ? -id - 1 : -1;
+    }
+
+    /**
+     * Change the population count of a species for entities that are
+     * kept in an entity store rather than placed as objects.
+     * @param species The species code.
+     * @param speciesClass The class to report the species under.
+     * @param delta The change, e.g. 1 for a birth, -1 for a death.
+     */
+    public synchronized void countEntity(byte species, Class<?> speciesClass, int delta)
+    {
+        counts[species] += delta;
+        if(speciesClasses[species] == null) {
+            speciesClasses[species] = speciesClass;
+        }
+    }
+
+    /**
+     * Return the entity id in the cell with the given index.
+     * @param index The cell index.
+     * @return The entity id, or 0 if the cell is empty. Store
+     *         entities have a negative id, see placeEntity.
+     */
+    public int getIdAt(int index)
+    {
+        return storage.getId(index);
+    }
+
+    /**
+     * Return the species code in the cell with the given index.
+     * @param index The cell index.
+     * @return The species code, or Species.EMPTY if the cell is empty.
+     */
+    public byte getSpeciesAt(int index)
+    {
+        return storage.getSpecies(index);
+    }
+
+    /**
+     * Return the species code at the given location.
+     * @param location Where in the field.
+     * @return The species code, or Species.EMPTY if the cell is empty.
+     */
+    public byte getSpeciesAt(Location location)
+    {
+        return storage.getSpecies(indexOf(location));
+    }
+
+    /**
+     * Return the number of occupants of a species on the field. The
+     * count is kept up to date as occupants are placed and released,
+     * so this does not scan the grid.
+     * @param species The species code.
+     * @return The number of occupants of that species.
+     */
+    public int getCount(byte species)
+    {
+        return counts[species];
+    }
+
+    /**
+     * Find the next cell whose species changed since the last call
+     * of clearDirty. After clear() every cell counts as changed.
+     * @param from The first cell index to look at.
+     * @return The index of the next changed cell, or -1 if there is none.
+     */
+    public int nextDirtyCell(int from)
+    {
+        if(allDirty) {
+            from = Math.max(from, 0);
+            return from < depth * width ? from : -1;
+        }
+        return nextCell(dirty, from);
+    }
+
+    /**
+     * Find the next cell that is not empty.
+     * @param from The first cell index to look at.
+     * @return The index of the next occupied cell, or -1 if there is none.
+     */
+    public int nextOccupiedCell(int from)
+    {
+        return nextCell(occupied, from);
+    }
+
+    /**
+     * Count the cells that are not empty.
+     * @return The number of occupied cells.
+     */
+    public int countOccupied()
+    {
+        int count = 0;
+        for(long[] tile : occupied) {
+            if(tile != null) {
+                for(long word : tile) {
+                    count += Long.bitCount(word);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the cells that are not empty in a rectangle of the field,
+     * e.g. to find the density of a region. The rectangle must lie
+     * within the field.
+     * @param row The top row of the rectangle.
+     * @param col The left column of the rectangle.
+     * @param rows The number of rows of the rectangle.
+     * @param cols The number of columns of the rectangle.
+     * @return The number of occupied cells in the rectangle.
+     */
+    public int countOccupied(int row, int col, int rows, int cols)
+    {
+        if(rows <= 0 || cols <= 0) {
+            return 0;
+        }
+        int last = col + cols - 1;
+        int firstWord = col >>> 6;
+        int lastWord = last >>> 6;
+        long firstMask = -1L << col;
+        long lastMask = -1L >>> (63 - (last & 63));
+        int count = 0;
+        for(int r = row; r < row + rows; r++) {
+            if(firstWord == lastWord) {
+                count += Long.bitCount(occupiedWord(r, firstWord) & firstMask & lastMask);
+            }
+            else {
+                count += Long.bitCount(occupiedWord(r, firstWord) & firstMask);
+                for(int word = firstWord + 1; word < lastWord; word++) {
+                    count += Long.bitCount(occupiedWord(r, word));
+                }
+                count += Long.bitCount(occupiedWord(r, lastWord) & lastMask);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the next cell whose bit is set in a bitset laid out as dirty.
+     * @param bits The bitset.
+     * @param from The first cell index to look at.
+     * @return The index of the next cell with its bit set, or -1 if there is none.
+     */
+    private int nextCell(long[][] bits, int from)
+    {
+        if(from < 0) {
+            from = 0;
+        }
+        int row = from / width;
+        int col = from - row * width;
+        while(row < depth) {
+            int band = row >>> BITS_SHIFT;
+            int bandEnd = Math.min(depth, (band + 1) << BITS_SHIFT);
+            if(!bandInUse(bits, band)) {
+                // A whole row of tiles that were never made is skipped at once.
+                row = bandEnd;
+                col = 0;
+                continue;
+            }
+            for(; row < bandEnd; row++, col = 0) {
+                for(int word = col >>> 6; word < tilesPerRow; word++) {
+                    long[] tile = bits[band * tilesPerRow + word];
+                    if(tile == null) {
+                        continue;
+                    }
+                    long found = tile[row & BITS_MASK];
+                    if(word == col >>> 6) {
+                        found &= -1L << col;
+                    }
+                    if(found != 0) {
+                        return row * width + (word << 6) + Long.numberOfTrailingZeros(found);
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param bits A bitset laid out as dirty.
+     * @param band A row of tiles.
+     * @return true if a tile in that row was made.
+     */
+    private boolean bandInUse(long[][] bits, int band)
+    {
+        for(int t = band * tilesPerRow; t < (band + 1) * tilesPerRow; t++) {
+            if(bits[t] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the tile of a bitset that holds a cell, making it if it
+     * was not made yet.
+     * @param bits A bitset laid out as dirty.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The tile; the word of the cell is at row % 64.
+     */
+    private long[] bitsTile(long[][] bits, int row, int col)
+    {
+        int t = (row >>> BITS_SHIFT) * tilesPerRow + (col >>> BITS_SHIFT);
+        long[] tile = bits[t];
+        if(tile == null) {
+            synchronized(bitsLock) {
+                tile = bits[t];
+                if(tile == null) {
+                    tile = new long[1 << BITS_SHIFT];
+                    bits[t] = tile;
+                }
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Return a word of the occupied bitset.
+     * @param row The row.
+     * @param word The word in the row, the column divided by 64.
+     * @return The bits of the 64 cells of that word, 0 if its tile was
+     *         never made.
+     */
+    private long occupiedWord(int row, int word)
+    {
+        long[] tile = occupied[(row >>> BITS_SHIFT) * tilesPerRow + word];
+        return tile != null ? tile[row & BITS_MASK] : 0;
+    }
+
+    /**
+     * Forget which cells changed, e.g. after they have been drawn.
+     */
+    public void clearDirty()
+    {
+        allDirty = false;
+        for(long[] tile : dirty) {
+            if(tile != null) {
+                Arrays.fill(tile, 0L);
+            }
+        }
+    }
+
+    /**
+     * Return the class of the occupants seen for a species code.
+     * @param species The species code.
+     * @return The class, or null if no such occupant was ever placed.
+     */
+    public Class<?> getSpeciesClass(byte species)
+    {
+        return speciesClasses[species];
+    }
+
+    /**
+     * Count the occupants per species by looking at every occupied
+     * cell. This is slow and only meant to check the kept counts.
+     * @return The number of cells per species code.
+     */
+    public int[] scanCounts()
+    {
+        int[] scanned = new int[Species.COUNT];
+        for(int index = nextOccupiedCell(0); index >= 0; index = nextOccupiedCell(index + 1)) {
+            scanned[storage.getSpecies(index)]++;
+        }
+        scanned[Species.EMPTY] = 0;
+        return scanned;
+    }
+
+    /**
+     * Return the object that holds the given entity id.
+     * @param id The entity id.
+     * @return The object, or null if the id is not in use.
+     */
+    public Object getOccupant(int id)
+    {
+        return occupants[id];
     }
     
     /**
@@ -123,11 +726,9 @@ public class Field
     public List<Location> getFreeAdjacentLocations(Location location)
     {
         List<Location> free = new LinkedList<Location>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
-            }
+        Neighbourhood cells = freeAdjacentCells(indexOf(location));
+        for(int i = 0; i < cells.size(); i++) {
+            free.add(locationOf(cells.get(i)));
         }
         return free;
     }
@@ -142,10 +743,9 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
+        int free = freeAdjacentCell(indexOf(location));
+        if(free >= 0) {
+            return locationOf(free);
         }
         else {
             return null;
@@ -155,7 +755,8 @@ public class Field
     /**
      * Return a shuffled list of locations adjacent to the given one.
      * The list will not include the location itself.
-     * All locations will lie within the grid.
+     * All locations will lie within the grid; on a toroidal field the
+     * neighbours across an edge are those on the opposite edge.
      * @param location The location from which to generate adjacencies.
      * @return A list of locations adjacent to that given.
      */
@@ -167,14 +768,22 @@ public class Field
         if(location != null) {
             int row = location.getRow();
             int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
+            if(toroidal) {
+                int index = indexOf(row, col);
+                for(int i = 0; i < ROW_OFFSETS.length; i++) {
+                    locations.add(locationOf(wrappedNeighbour(index, row, col, i)));
+                }
+            }
+            else {
+                for(int roffset = -1; roffset <= 1; roffset++) {
+                    int nextRow = row + roffset;
+                    if(nextRow >= 0 && nextRow < depth) {
+                        for(int coffset = -1; coffset <= 1; coffset++) {
+                            int nextCol = col + coffset;
+                            // Exclude invalid locations and the original location.
+                            if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
+                                locations.add(locationOf(indexOf(nextRow, nextCol)));
+                            }
                         }
                     }
                 }
@@ -182,11 +791,306 @@ public class Field
             
             // Shuffle the list. Several other methods rely on the list
             // being in a random order.
-            Collections.shuffle(locations, rand);
+            Collections.shuffle(locations, Randomizer.current());
         }
         return locations;
     }
 
+    /**
+     * Fill the calling thread's scratch neighbourhood with the cells
+     * adjacent to the given cell, in random order, together with the
+     * species in each of them. The cell itself is not included and all
+     * cells lie within the grid. The result is overwritten by the next
+     * neighbourhood query on the same thread.
+     * @param index The cell index.
+     * @return The adjacent cells.
+     */
+    public Neighbourhood adjacentCells(int index)
+    {
+        Neighbourhood cells = scratch.get();
+        adjacentCells(index, cells);
+        return cells;
+    }
+
+    /**
+     * Fill a neighbourhood with the cells adjacent to the given cell
+     * and the species in each of them, in random order.
+     * @param index The cell index.
+     * @param cells The neighbourhood to fill.
+     */
+    public void adjacentCells(int index, Neighbourhood cells)
+    {
+        cells.reset();
+        int row = index / width;
+        int col = index - row * width;
+        if(toroidal) {
+            for(int i = 0; i < ROW_OFFSETS.length; i++) {
+                int next = wrappedNeighbour(index, row, col, i);
+                cells.add(next, storage.getSpecies(next));
+            }
+        }
+        else if(row > 0 && row < depth - 1 && col > 0 && col < width - 1) {
+            // Away from the edges every offset is valid.
+            for(int i = 0; i < indexOffsets.length; i++) {
+                int next = index + indexOffsets[i];
+                cells.add(next, storage.getSpecies(next));
+            }
+        }
+        else {
+            for(int i = 0; i < ROW_OFFSETS.length; i++) {
+                int nextRow = row + ROW_OFFSETS[i];
+                int nextCol = col + COL_OFFSETS[i];
+                if(nextRow >= 0 && nextRow < depth && nextCol >= 0 && nextCol < width) {
+                    int next = index + indexOffsets[i];
+                    cells.add(next, storage.getSpecies(next));
+                }
+            }
+        }
+        cells.shuffle(Randomizer.current());
+    }
+
+    /**
+     * Fill the calling thread's scratch neighbourhood with the free
+     * cells adjacent to the given cell, in random order.
+     * @param index The cell index.
+     * @return The free adjacent cells.
+     */
+    public Neighbourhood freeAdjacentCells(int index)
+    {
+        Neighbourhood cells = scratch.get();
+        cells.reset();
+        int row = index / width;
+        int col = index - row * width;
+        for(int free = freeMask(row, col); free != 0; free &= free - 1) {
+            cells.add(maskNeighbour(index, row, col, Integer.numberOfTrailingZeros(free)), Species.EMPTY);
+        }
+        cells.shuffle(Randomizer.current());
+        return cells;
+    }
+
+    /**
+     * Pick a random free cell adjacent to the given cell.
+     * @param index The cell index.
+     * @return A free adjacent cell, or -1 if there is none.
+     */
+    public int freeAdjacentCell(int index)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        int free = freeMask(row, col);
+        if(free == 0) {
+            return -1;
+        }
+        // Drop a random number of the lowest free bits, so every free
+        // cell is equally likely to be the one returned.
+        for(int skip = Randomizer.current().nextInt(Integer.bitCount(free)); skip > 0; skip--) {
+            free &= free - 1;
+        }
+        return maskNeighbour(index, row, col, Integer.numberOfTrailingZeros(free));
+    }
+
+    /**
+     * Return which of the eight cells around a cell are free, as a mask
+     * of the three by three cells centred on it: bit 3 * (r + 1) + c + 1
+     * stands for the cell r rows down and c columns to the right. The
+     * bit of the cell itself is never set, nor are those of cells beyond
+     * the edge of a bounded field.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The mask of the free neighbours.
+     */
+    private int freeMask(int row, int col)
+    {
+        int above, below;
+        if(row > 0) {
+            above = rowBits(row - 1, col);
+        }
+        else {
+            above = toroidal ? rowBits(depth - 1, col) : 7;
+        }
+        if(row < depth - 1) {
+            below = rowBits(row + 1, col);
+        }
+        else {
+            below = toroidal ? rowBits(0, col) : 7;
+        }
+        return ~(above | rowBits(row, col) << 3 | below << 6) & NEIGHBOUR_BITS;
+    }
+
+    /**
+     * Return the occupied bits of three cells next to each other in a
+     * row: bit 0 for the column left of col, bit 1 for col and bit 2 for
+     * the column right of it. Beyond the edge of a bounded field a cell
+     * counts as occupied.
+     * @param row The row.
+     * @param col The middle column.
+     * @return The three bits.
+     */
+    private int rowBits(int row, int col)
+    {
+        int bit = col & 63;
+        if(bit != 0 && bit != 63 && col != width - 1) {
+            // All three in one word: a single shift.
+            return (int) (occupiedWord(row, col >>> 6) >>> (bit - 1)) & 7;
+        }
+        int left, right;
+        if(col > 0) {
+            left = occupiedBit(row, col - 1);
+        }
+        else {
+            left = toroidal ? occupiedBit(row, width - 1) : 1;
+        }
+        if(col < width - 1) {
+            right = occupiedBit(row, col + 1);
+        }
+        else {
+            right = toroidal ? occupiedBit(row, 0) : 1;
+        }
+        return left | occupiedBit(row, col) << 1 | right << 2;
+    }
+
+    /**
+     * @param row A row.
+     * @param col A column.
+     * @return 1 if the cell in that row and column is occupied, else 0.
+     */
+    private int occupiedBit(int row, int col)
+    {
+        return (int) (occupiedWord(row, col >>> 6) >>> col) & 1;
+    }
+
+    /**
+     * Return the cell that a bit of a mask from freeMask stands for.
+     * @param index The cell index of the centre.
+     * @param row The row of the centre.
+     * @param col The column of the centre.
+     * @param bit The bit in the mask.
+     * @return The index of the cell.
+     */
+    private int maskNeighbour(int index, int row, int col, int bit)
+    {
+        if(toroidal) {
+            return index + rowWrap[3 * row + bit / 3] + colWrap[3 * col + bit % 3];
+        }
+        return index + maskOffsets[bit];
+    }
+
+    /**
+     * Return a neighbour of a cell on a toroidal field. The offsets come
+     * from the wrap tables, so there is no test for the edges.
+     * @param index The cell index.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param i The number of the neighbour, an index in ROW_OFFSETS.
+     * @return The index of the neighbour.
+     */
+    private int wrappedNeighbour(int index, int row, int col, int i)
+    {
+        return index + rowWrap[3 * row + 1 + ROW_OFFSETS[i]] + colWrap[3 * col + 1 + COL_OFFSETS[i]];
+    }
+
+    /**
+     * Return the location of a cell. Every call for the same cell
+     * returns the same instance, which is only made the first time.
+     * @param index The cell index.
+     * @return The location of the cell.
+     */
+    public Location locationOf(int index)
+    {
+        Location[] chunk = locations[index >>> LOCATION_CHUNK_SHIFT];
+        if(chunk != null) {
+            // Location is immutable, so one that is seen is complete.
+            Location location = chunk[index & LOCATION_CHUNK_MASK];
+            if(location != null) {
+                return location;
+            }
+        }
+        return createLocation(index);
+    }
+
+    /**
+     * Make the location of a cell, unless another thread just did.
+     * @param index The cell index.
+     * @return The location of the cell.
+     */
+    private Location createLocation(int index)
+    {
+        synchronized(locationLock) {
+            Location[] chunk = locations[index >>> LOCATION_CHUNK_SHIFT];
+            if(chunk == null) {
+                chunk = new Location[1 << LOCATION_CHUNK_SHIFT];
+                locations[index >>> LOCATION_CHUNK_SHIFT] = chunk;
+            }
+            Location location = chunk[index & LOCATION_CHUNK_MASK];
+            if(location == null) {
+                location = new Location(index / width, index % width);
+                chunk[index & LOCATION_CHUNK_MASK] = location;
+            }
+            return location;
+        }
+    }
+
+    /**
+     * Return the index of a location.
+     * @param location The location.
+     * @return The cell index.
+     */
+    public int indexOf(Location location)
+    {
+        return location.getRow() * width + location.getCol();
+    }
+
+    /**
+     * Return the index of a cell, row * width + col.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The cell index.
+     */
+    public int indexOf(int row, int col)
+    {
+        return row * width + col;
+    }
+
+    /**
+     * @param index A cell index.
+     * @return The row of the cell.
+     */
+    public int rowOf(int index)
+    {
+        return index / width;
+    }
+
+    /**
+     * @param index A cell index.
+     * @return The column of the cell.
+     */
+    public int colOf(int index)
+    {
+        return index % width;
+    }
+
+    /**
+     * Return the key of a cell, its row and column packed into a long
+     * as by Location.key. Unlike the index, the key does not depend on
+     * the width of the field.
+     * @param index The cell index.
+     * @return The key of the cell.
+     */
+    public long keyOf(int index)
+    {
+        return Location.key(rowOf(index), colOf(index));
+    }
+
+    /**
+     * Return the index of the cell with the given key.
+     * @param key A key made by Location.key or keyOf.
+     * @return The cell index.
+     */
+    public int indexOfKey(long key)
+    {
+        return indexOf(Location.rowOfKey(key), Location.colOfKey(key));
+    }
+
     /**
      * Return the depth of the field.
      * @return The depth of the field.
@@ -204,4 +1108,106 @@ public class Field
     {
         return width;
     }
+
+    /**
+     * Store an id and species code in a cell and note the cell as
+     * changed if its species differs from before, which is also when
+     * its bit in occupied may change.
+     * @param index The cell index.
+     * @param id The id to store.
+     * @param species The species code to store.
+     */
+    private void set(int index, int id, byte species)
+    {
+        if(storage.getSpecies(index) != species) {
+            markChanged(index, species);
+        }
+        storage.set(index, id, species);
+    }
+
+    /**
+     * Note a cell as changed, and as occupied or not by its new species.
+     * @param index The cell index.
+     * @param species The new species code of the cell.
+     */
+    private void markChanged(int index, byte species)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        int word = row & BITS_MASK;
+        long bit = 1L << col;
+        if(!allDirty) {
+            bitsTile(dirty, row, col)[word] |= bit;
+        }
+        if(species == Species.EMPTY) {
+            long[] tile = occupied[(row >>> BITS_SHIFT) * tilesPerRow + (col >>> BITS_SHIFT)];
+            if(tile != null) {
+                tile[word] &= ~bit;
+            }
+        }
+        else {
+            bitsTile(occupied, row, col)[word] |= bit;
+        }
+    }
+
+    /**
+     * Hand out an entity id for an object and count it.
+     * @param animal The object that will hold the id.
+     * @param species The species code of the object.
+     * @return The new entity id.
+     */
+    private synchronized int allocateId(Object animal, byte species)
+    {
+        counts[species]++;
+        if(speciesClasses[species] == null) {
+            speciesClasses[species] = animal.getClass();
+        }
+        int id;
+        if(freeCount > 0) {
+            id = freeIds[--freeCount];
+        }
+        else {
+            id = nextId++;
+        }
+        Object[] slots = occupants;
+        if(id == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        slots[id] = animal;
+        // Publish the slot, and the new array if it grew.
+        occupants = slots;
+        return id;
+    }
+
+    /**
+     * Make an entity id available again and stop counting its object.
+     * @param id The id to release.
+     * @param species The species code of the object.
+     */
+    private synchronized void freeId(int id, byte species)
+    {
+        counts[species]--;
+        Object[] slots = occupants;
+        slots[id] = null;
+        occupants = slots;
+        if(freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Release the id of an object in the given cell if that object
+     * is not an Occupant, since such an id only lives as long as the
+     * object stays in its cell.
+     * @param index The cell index.
+     */
+    private void releaseAnonymous(int index)
+    {
+        int id = storage.getId(index);
+        Object occupant = id > 0 ? occupants[id] : null;
+        if(occupant != null && !(occupant instanceof Occupant)) {
+            freeId(id, Species.UNKNOWN);
+        }
+    }
 }
@@ -7,6 +7,10 @@ import java.util.HashMap;
  * of a field. It is flexible: it will create and maintain a counter 
  * for any class of object that is found within the field.
  * 
+ * The counts are taken from the population counters that the field
+ * keeps up to date, so refreshing them costs O(species), not O(cells).
+ * In debug mode every refresh is checked against a full scan.
+ * 
  * @author Caroline
  * @version 1.0
  */
@@ -16,6 +20,8 @@ public class FieldStats
     private HashMap<Class, Counter> counters;
     // Whether the counters are currently up to date.
     private boolean countsValid;
+    // Whether to check the kept counts against a full scan of the field.
+    private volatile boolean debug;
     
     //public static int foxCount;
     //public static int bearCount;
@@ -81,6 +87,17 @@ public class FieldStats
         count.increment();
     }
 
+    /**
+     * Turn the debug check on or off. When on, every refresh of the
+     * counts compares the field's population counters with a full scan
+     * of the grid and throws an IllegalStateException if they differ.
+     * @param debug true to check the counts.
+     */
+    public void setDebug(boolean debug)
+    {
+        this.debug = debug;
+    }
+
     /**
      * Indicate that an animal count has been completed.
      */
@@ -123,20 +140,43 @@ public class FieldStats
      * Generate counts of the number of foxes and rabbits.
      * These are not kept up to date as foxes and rabbits
      * are placed in the field, but only when a request
-     * is made for the information.
+     * is made for the information. They are copied from the
+     * population counters of the field.
      * @param field The field to generate the stats for.
      */
     private void generateCounts(Field field)
     {
         reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
+        for(byte species = 1; species < Species.COUNT; species++) {
+            Class<?> speciesClass = field.getSpeciesClass(species);
+            if(speciesClass != null) {
+                Counter count = counters.get(speciesClass);
+                if(count == null) {
+                    count = new Counter(speciesClass.getName());
+                    counters.put(speciesClass, count);
                 }
+                count.setCount(field.getCount(species));
             }
         }
+        if(debug) {
+            checkCounts(field);
+        }
         countsValid = true;
     }
+
+    /**
+     * Compare the population counters of the field with a full scan.
+     * @param field The field to check.
+     * @throws IllegalStateException If a counter is wrong.
+     */
+    private void checkCounts(Field field)
+    {
+        int[] scanned = field.scanCounts();
+        for(byte species = 1; species < Species.COUNT; species++) {
+            if(scanned[species] != field.getCount(species)) {
+                throw new IllegalStateException(Species.getName(species) + " count is "
+                    + field.getCount(species) + " but the field holds " + scanned[species]);
+            }
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package Logic;
+
+/**
+ * The cell storage behind a Field. A storage keeps, for each cell, the
+ * entity id of its occupant and the occupant's species code. Cells are
+ * addressed by their index, row * width + col; an id of 0 means the
+ * cell is empty.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public interface FieldStorage
+{
+    /**
+     * @param index The cell index.
+     * @return The entity id at the cell, or 0 if it is empty.
+     */
+    int getId(int index);
+
+    /**
+     * @param index The cell index.
+     * @return The species code at the cell, or Species.EMPTY.
+     */
+    byte getSpecies(int index);
+
+    /**
+     * Store an occupant in a cell.
+     * @param index The cell index.
+     * @param id The entity id of the occupant.
+     * @param species The species code of the occupant.
+     */
+    void set(int index, int id, byte species);
+
+    /**
+     * Empty a single cell.
+     * @param index The cell index.
+     */
+    void clear(int index);
+
+    /**
+     * Empty every cell.
+     */
+    void clearAll();
+
+    /**
+     * Find the next cell that is not empty, e.g. to learn which cells
+     * a storage that was opened with cells in it holds.
+     * @param from The first cell index to look at.
+     * @return The index of the next occupied cell, or -1 if there is none.
+     */
+    int nextOccupied(int from);
+}
@@ -0,0 +1,22 @@
+package Logic;
+import java.io.IOException;
+
+/**
+ * Makes the cell storage for a field once its size is known, e.g. when
+ * a simulation is restored from a checkpoint, so that a large field is
+ * made on the storage it is meant to live in from the start.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public interface FieldStorageFactory
+{
+    /**
+     * Make empty storage for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @return Storage for depth * width cells, all empty.
+     * @throws IOException If the storage needs a file that cannot be made.
+     */
+    FieldStorage create(int depth, int width) throws IOException;
+}
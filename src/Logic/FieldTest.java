@@ -0,0 +1,483 @@
+package Logic;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ReadOnlyBufferException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * JUnit om de buurt-methodes uit de klasse Field te testen.
+ *
+ * @author Caroline
+ */
+public class FieldTest {
+
+    /**
+     * Test that corner, edge and inner cells get the right neighbours.
+     */
+    @Test
+    public void adjacentCells() {
+        System.out.println("adjacentCells");
+        Field field = new Field(10, 12);
+        assertEquals(3, field.adjacentCells(field.indexOf(0, 0)).size());
+        assertEquals(5, field.adjacentCells(field.indexOf(0, 5)).size());
+        Neighbourhood cells = field.adjacentCells(field.indexOf(4, 5));
+        assertEquals(8, cells.size());
+        int sum = 0;
+        for(int i = 0; i < cells.size(); i++) {
+            int cell = cells.get(i);
+            assertTrue(Math.abs(field.rowOf(cell) - 4) <= 1);
+            assertTrue(Math.abs(field.colOf(cell) - 5) <= 1);
+            sum += cell;
+        }
+        // Every neighbour exactly once: the offsets cancel out.
+        assertEquals(8 * field.indexOf(4, 5), sum);
+    }
+
+    /**
+     * Test that the neighbours come back in a random order.
+     */
+    @Test
+    public void adjacentCellsShuffled() {
+        System.out.println("adjacentCellsShuffled");
+        Field field = new Field(10, 12);
+        int center = field.indexOf(4, 5);
+        int[] firstCounts = new int[field.getDepth() * field.getWidth()];
+        for(int i = 0; i < 800; i++) {
+            firstCounts[field.adjacentCells(center).get(0)]++;
+        }
+        Neighbourhood cells = field.adjacentCells(center);
+        for(int i = 0; i < cells.size(); i++) {
+            assertTrue(firstCounts[cells.get(i)] > 0);
+        }
+    }
+
+    /**
+     * Test that only free cells are offered.
+     */
+    @Test
+    public void freeAdjacentCells() {
+        System.out.println("freeAdjacentCells");
+        Field field = new Field(10, 12);
+        int center = field.indexOf(4, 5);
+        field.place("blocked", field.indexOf(3, 5));
+        field.place("blocked", field.indexOf(5, 6));
+        assertEquals(6, field.freeAdjacentCells(center).size());
+        for(int i = 0; i < 50; i++) {
+            int free = field.freeAdjacentCell(center);
+            assertEquals(Species.EMPTY, field.getSpeciesAt(free));
+        }
+    }
+
+    /**
+     * Test that on a toroidal field every cell has eight neighbours and
+     * that those across an edge are on the opposite edge.
+     */
+    @Test
+    public void toroidal() {
+        System.out.println("toroidal");
+        Field field = new Field(10, 12);
+        field.setToroidal(true);
+        Neighbourhood cells = field.adjacentCells(field.indexOf(0, 0));
+        assertEquals(8, cells.size());
+        Set<Integer> found = new HashSet<Integer>();
+        for(int i = 0; i < cells.size(); i++) {
+            found.add(cells.get(i));
+        }
+        assertTrue(found.contains(field.indexOf(9, 11)));
+        assertTrue(found.contains(field.indexOf(9, 0)));
+        assertTrue(found.contains(field.indexOf(0, 11)));
+        assertTrue(found.contains(field.indexOf(1, 1)));
+        assertEquals(8, found.size());
+        assertEquals(8, field.adjacentLocations(field.locationOf(field.indexOf(9, 5))).size());
+
+        field.place("blocked", field.indexOf(9, 11));
+        assertEquals(7, field.freeAdjacentCells(field.indexOf(0, 0)).size());
+        for(int i = 0; i < 50; i++) {
+            assertFalse(field.freeAdjacentCell(field.indexOf(0, 0)) == field.indexOf(9, 11));
+        }
+        field.setToroidal(false);
+        assertEquals(3, field.freeAdjacentCells(field.indexOf(0, 0)).size());
+        try {
+            new Field(2, 12).setToroidal(true);
+            fail("A field of two rows cannot wrap around");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that the wrap table of a toroidal field gives, for every cell
+     * including the corners and the smallest fields that may wrap, the
+     * eight cells found by counting around the edges.
+     */
+    @Test
+    public void wrapTableEdges() {
+        System.out.println("wrapTableEdges");
+        int[][] sizes = { {3, 3}, {3, 7}, {5, 7}, {7, 3}, {4, 65} };
+        for(int[] size : sizes) {
+            int depth = size[0];
+            int width = size[1];
+            Field field = new Field(depth, width);
+            field.setToroidal(true);
+            for(int row = 0; row < depth; row++) {
+                for(int col = 0; col < width; col++) {
+                    Set<Integer> expected = new HashSet<Integer>();
+                    for(int dr = -1; dr <= 1; dr++) {
+                        for(int dc = -1; dc <= 1; dc++) {
+                            if(dr != 0 || dc != 0) {
+                                expected.add(field.indexOf((row + dr + depth) % depth,
+                                                           (col + dc + width) % width));
+                            }
+                        }
+                    }
+                    String where = depth + "x" + width + " at " + row + "," + col;
+                    assertEquals(where, expected, cellSet(field.adjacentCells(field.indexOf(row, col))));
+                    assertEquals(where, expected, cellSet(field.freeAdjacentCells(field.indexOf(row, col))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the cells of a neighbourhood as a set.
+     */
+    private Set<Integer> cellSet(Neighbourhood cells) {
+        Set<Integer> set = new HashSet<Integer>();
+        for(int i = 0; i < cells.size(); i++) {
+            set.add(cells.get(i));
+        }
+        return set;
+    }
+
+    /**
+     * Test that the free neighbours read from the occupancy bits are the
+     * empty cells around every cell, also across word borders and the
+     * edges of a toroidal field, and that occupied cells are counted
+     * right in any rectangle.
+     */
+    @Test
+    public void occupancyMasks() {
+        System.out.println("occupancyMasks");
+        Field field = new Field(9, 130);
+        Random rand = new Random(4);
+        for(int cell = 0; cell < 9 * 130; cell++) {
+            if(rand.nextInt(3) == 0) {
+                field.place("a", cell);
+            }
+        }
+        field.clear(field.indexOf(4, 64));
+        for(int mode = 0; mode < 2; mode++) {
+            field.setToroidal(mode == 1);
+            for(int cell = 0; cell < 9 * 130; cell++) {
+                Set<Integer> expected = new HashSet<Integer>();
+                Neighbourhood around = field.adjacentCells(cell);
+                for(int i = 0; i < around.size(); i++) {
+                    if(around.getSpecies(i) == Species.EMPTY) {
+                        expected.add(around.get(i));
+                    }
+                }
+                Neighbourhood free = field.freeAdjacentCells(cell);
+                Set<Integer> found = new HashSet<Integer>();
+                for(int i = 0; i < free.size(); i++) {
+                    found.add(free.get(i));
+                }
+                assertEquals(expected, found);
+                int picked = field.freeAdjacentCell(cell);
+                assertTrue(expected.isEmpty() ? picked == -1 : expected.contains(picked));
+            }
+        }
+
+        int[][] rects = { { 0, 0, 9, 130 }, { 2, 60, 3, 8 }, { 1, 1, 7, 127 }, { 8, 129, 1, 1 }, { 0, 64, 9, 66 } };
+        for(int[] rect : rects) {
+            int expected = 0;
+            for(int row = rect[0]; row < rect[0] + rect[2]; row++) {
+                for(int col = rect[1]; col < rect[1] + rect[3]; col++) {
+                    if(field.getSpeciesAt(field.indexOf(row, col)) != Species.EMPTY) {
+                        expected++;
+                    }
+                }
+            }
+            assertEquals(expected, field.countOccupied(rect[0], rect[1], rect[2], rect[3]));
+        }
+        assertEquals(field.scanCounts()[Species.UNKNOWN], field.countOccupied());
+        int first = field.nextOccupiedCell(0);
+        assertTrue(first >= 0 && field.getSpeciesAt(first) != Species.EMPTY);
+        for(int cell = 0; cell < first; cell++) {
+            assertEquals(Species.EMPTY, field.getSpeciesAt(cell));
+        }
+        field.clear();
+        assertEquals(0, field.countOccupied());
+        assertEquals(-1, field.nextOccupiedCell(0));
+    }
+
+    /**
+     * Test that a sweep of neighbourhood queries over the whole grid,
+     * as done in one simulation step, does not allocate.
+     */
+    @Test
+    public void neighbourhoodDoesNotAllocate() {
+        System.out.println("neighbourhoodDoesNotAllocate");
+        Field field = new Field(80, 120);
+        field.place("blocked", field.indexOf(40, 60));
+        // The queries fill one neighbourhood of the thread again.
+        assertSame(field.adjacentCells(0), field.freeAdjacentCells(1));
+        sweep(field);
+        long before = allocatedBytes();
+        assumeTrue("no allocation counter", before >= 0);
+        int steps = 10;
+        long checksum = 0;
+        for(int step = 0; step < steps; step++) {
+            checksum += sweep(field);
+        }
+        long perStep = (allocatedBytes() - before) / steps;
+        assertTrue(checksum > 0);
+        assertTrue("allocated " + perStep + " bytes per step", perStep < 1024);
+    }
+
+    /**
+     * Test that the population counters follow placing and releasing.
+     */
+    @Test
+    public void populationCounts() {
+        System.out.println("populationCounts");
+        Field field = new Field(10, 12);
+        field.place("a", field.indexOf(1, 1));
+        field.place("b", field.indexOf(2, 2));
+        assertEquals(2, field.getCount(Species.UNKNOWN));
+        field.clear(field.indexOf(1, 1));
+        assertEquals(1, field.getCount(Species.UNKNOWN));
+        assertEquals(field.scanCounts()[Species.UNKNOWN], field.getCount(Species.UNKNOWN));
+        field.clear();
+        assertEquals(0, field.getCount(Species.UNKNOWN));
+    }
+
+    /**
+     * Test that exactly the cells whose species changed are reported,
+     * also in rows wider than one word of the bitset.
+     */
+    @Test
+    public void dirtyCells() {
+        System.out.println("dirtyCells");
+        Field field = new Field(5, 70);
+        field.clearDirty();
+        assertEquals(-1, field.nextDirtyCell(0));
+        field.place("a", field.indexOf(1, 66));
+        field.place("b", field.indexOf(3, 2));
+        field.clear(field.indexOf(4, 4));
+        assertEquals(field.indexOf(1, 66), field.nextDirtyCell(0));
+        assertEquals(field.indexOf(3, 2), field.nextDirtyCell(field.indexOf(1, 67)));
+        assertEquals(-1, field.nextDirtyCell(field.indexOf(3, 3)));
+        field.clearDirty();
+        // Same species again: nothing to redraw.
+        field.place("c", field.indexOf(3, 2));
+        assertEquals(-1, field.nextDirtyCell(0));
+        field.clear();
+        assertEquals(0, field.nextDirtyCell(0));
+        assertEquals(field.indexOf(4, 69), field.nextDirtyCell(field.indexOf(4, 69)));
+    }
+
+    /**
+     * Test that a field moved to a memory-mapped file keeps its cells,
+     * and that a snapshot can be opened read-only with the same cells.
+     */
+    @Test
+    public void mappedStorage() throws Exception {
+        System.out.println("mappedStorage");
+        File file = File.createTempFile("field", ".vkfs");
+        try {
+            Field field = new Field(10, 12);
+            field.place("a", field.indexOf(1, 1));
+            field.setStorage(MappedFieldStorage.create(file, 10, 12));
+            field.place("b", field.indexOf(9, 11));
+            ((MappedFieldStorage) field.getStorage()).flush(7);
+
+            MappedFieldStorage snapshot = MappedFieldStorage.open(file, true);
+            assertEquals(10, snapshot.getDepth());
+            assertEquals(12, snapshot.getWidth());
+            assertEquals(7, snapshot.getStep());
+            Field saved = new Field(10, 12, snapshot);
+            assertEquals(Species.UNKNOWN, saved.getSpeciesAt(field.indexOf(1, 1)));
+            assertEquals(field.getIdAt(field.indexOf(9, 11)), saved.getIdAt(field.indexOf(9, 11)));
+            assertEquals(2, saved.scanCounts()[Species.UNKNOWN]);
+            try {
+                snapshot.clear(0);
+                fail("A read-only snapshot cannot be changed");
+            }
+            catch(ReadOnlyBufferException e) {
+                // expected
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that tiles are only kept while something lives in them, and
+     * that neighbours across a tile border are found as in a flat field.
+     */
+    @Test
+    public void tiledStorage() {
+        System.out.println("tiledStorage");
+        TiledFieldStorage tiles = new TiledFieldStorage(200, 300);
+        Field field = new Field(200, 300, tiles);
+        Field flat = new Field(200, 300);
+        assertEquals(0, tiles.getTileCount());
+        // Around the corner where four tiles meet.
+        int[] cells = { field.indexOf(63, 63), field.indexOf(64, 64), field.indexOf(63, 65), field.indexOf(199, 299) };
+        for(int cell : cells) {
+            field.place("a", cell);
+            flat.place("a", cell);
+        }
+        assertEquals(4, tiles.getTileCount());
+        int center = field.indexOf(64, 63);
+        assertEquals(flat.freeAdjacentCells(center).size(), field.freeAdjacentCells(center).size());
+        assertEquals(6, field.freeAdjacentCells(center).size());
+        assertEquals(flat.scanCounts()[Species.UNKNOWN], field.scanCounts()[Species.UNKNOWN]);
+
+        field.clear(field.indexOf(199, 299));
+        assertEquals(3, tiles.getTileCount());
+        assertEquals(Species.EMPTY, field.getSpeciesAt(field.indexOf(199, 299)));
+        field.clear();
+        assertEquals(0, tiles.getTileCount());
+    }
+
+    /**
+     * Test that a large field on tiled storage only takes memory for
+     * the area in use, also for its bitsets, and that a field made on
+     * storage that already holds cells finds them without a full scan.
+     */
+    @Test
+    public void sparseField() {
+        System.out.println("sparseField");
+        long before = allocatedBytes();
+        assumeTrue("no allocation counter", before >= 0);
+        TiledFieldStorage tiles = new TiledFieldStorage(20000, 20000);
+        Field field = new Field(20000, 20000, tiles);
+        int[] cells = { field.indexOf(0, 0), field.indexOf(7000, 12345), field.indexOf(19999, 19999) };
+        for(int cell : cells) {
+            field.place("a", cell);
+        }
+        long allocated = allocatedBytes() - before;
+        // A bitset of one bit per cell alone would be 50 MB.
+        assertTrue("allocated " + allocated, allocated < 16000000);
+        assertEquals(3, tiles.getTileCount());
+        assertEquals(3, field.countOccupied());
+        assertEquals(cells[1], field.nextOccupiedCell(cells[0] + 1));
+        assertEquals(cells[2], field.nextOccupiedCell(cells[1] + 1));
+        assertEquals(-1, field.nextOccupiedCell(cells[2] + 1));
+        assertEquals(1, field.countOccupied(6990, 12340, 20, 10));
+
+        Field reopened = new Field(20000, 20000, tiles);
+        assertEquals(3, reopened.countOccupied());
+        assertEquals(cells[2], reopened.nextOccupiedCell(cells[1] + 1));
+        reopened.clearDirty();
+        reopened.clear(cells[1]);
+        assertEquals(cells[1], reopened.nextDirtyCell(0));
+        assertEquals(-1, reopened.nextDirtyCell(cells[1] + 1));
+    }
+
+    /**
+     * Test that locations spread over a 100,000 by 100,000 grid get
+     * distinct hash codes, where row << 16 + col would collide, and that
+     * too large fields are refused.
+     */
+    @Test
+    public void largeGrid() {
+        System.out.println("largeGrid");
+        assertFalse(new Location(1, 0).hashCode() == new Location(0, 65536).hashCode());
+        Set<Integer> hashes = new HashSet<Integer>();
+        Random rand = new Random(3);
+        int n = 200000;
+        for(int i = 0; i < n; i++) {
+            Location location = new Location(rand.nextInt(100000), rand.nextInt(100000));
+            hashes.add(location.hashCode());
+            long key = location.getKey();
+            assertEquals(location.getRow(), Location.rowOfKey(key));
+            assertEquals(location.getCol(), Location.colOfKey(key));
+        }
+        // A random 32-bit hash collides about n * n / 2^33 times.
+        assertTrue(hashes.size() > n - 100);
+
+        Field field = new Field(20, 100000, new TiledFieldStorage(20, 100000));
+        assertEquals(field.indexOf(7, 99999), field.indexOfKey(field.keyOf(field.indexOf(7, 99999))));
+        try {
+            new Field(100000, 100000);
+            fail("A field of 10^10 cells cannot be indexed");
+        }
+        catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that a field hands out one Location per cell, also from
+     * adjacentLocations, and that asking again does not allocate.
+     */
+    @Test
+    public void locationCache() {
+        System.out.println("locationCache");
+        Field field = new Field(80, 120);
+        Location location = field.locationOf(field.indexOf(5, 7));
+        assertSame(location, field.locationOf(field.indexOf(5, 7)));
+        for(Location next : field.adjacentLocations(field.locationOf(field.indexOf(5, 8)))) {
+            assertSame(field.locationOf(field.indexOf(next)), next);
+        }
+        int cells = field.getDepth() * field.getWidth();
+        for(int cell = 0; cell < cells; cell++) {
+            field.locationOf(cell);
+        }
+        long before = allocatedBytes();
+        assumeTrue("no allocation counter", before >= 0);
+        long checksum = 0;
+        for(int cell = 0; cell < cells; cell++) {
+            checksum += field.locationOf(cell).getCol();
+        }
+        long allocated = allocatedBytes() - before;
+        assertTrue(checksum > 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    /**
+     * Return the number of bytes the current thread allocated so far.
+     * @return The number, or -1 if the JVM does not count them.
+     */
+    private long allocatedBytes() {
+        try {
+            Object threads = ManagementFactory.getThreadMXBean();
+            if(!(threads instanceof ThreadMXBean)) {
+                return -1;
+            }
+            return ((ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        catch(NoClassDefFoundError e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Run every neighbourhood query once for every cell.
+     * @param field The field to query.
+     * @return A checksum, so the work cannot be optimised away.
+     */
+    private long sweep(Field field) {
+        long checksum = 0;
+        int cells = field.getDepth() * field.getWidth();
+        for(int cell = 0; cell < cells; cell++) {
+            checksum += field.adjacentCells(cell).size();
+            checksum += field.freeAdjacentCells(cell).size();
+            checksum += field.freeAdjacentCell(cell);
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,74 @@
+package Logic;
+import java.util.Arrays;
+
+/**
+ * Field storage that keeps the grid in two flat primitive arrays:
+ * an int entity id and a byte species code per cell, indexed by
+ * row * width + col. Reading a cell is a single array access and the
+ * garbage collector has no references to trace.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public class FlatFieldStorage implements FieldStorage
+{
+    // The entity id per cell, 0 for an empty cell.
+    private final int[] ids;
+    // The species code per cell.
+    private final byte[] species;
+
+    // The longest array the virtual machines we run on can allocate.
+    public static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    /**
+     * Create storage for the given number of cells.
+     * @param size The number of cells, depth * width.
+     * @throws IllegalArgumentException If size is negative or more than MAX_CELLS.
+     */
+    public FlatFieldStorage(int size)
+    {
+        if(size < 0 || size > MAX_CELLS) {
+            throw new IllegalArgumentException("Flat storage holds at most " + MAX_CELLS + " cells: " + size);
+        }
+        ids = new int[size];
+        species = new byte[size];
+    }
+
+    public int getId(int index)
+    {
+        return ids[index];
+    }
+
+    public byte getSpecies(int index)
+    {
+        return species[index];
+    }
+
+    public void set(int index, int id, byte code)
+    {
+        ids[index] = id;
+        species[index] = code;
+    }
+
+    public void clear(int index)
+    {
+        ids[index] = 0;
+        species[index] = Species.EMPTY;
+    }
+
+    public void clearAll()
+    {
+        Arrays.fill(ids, 0);
+        Arrays.fill(species, Species.EMPTY);
+    }
+
+    public int nextOccupied(int from)
+    {
+        for(int index = Math.max(from, 0); index < species.length; index++) {
+            if(species[index] != Species.EMPTY) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
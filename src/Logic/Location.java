@@ -1,6 +1,10 @@
 package Logic;
 /**
  * Represent a location in a rectangular grid.
+ *
+ * A location cannot change, so a Field keeps one Location per cell and
+ * hands out that instance from locationOf; two locations of the same
+ * field are then equal exactly when they are the same object.
  * 
  * @author Caroline
  * @version 1.0
@@ -8,8 +12,8 @@ package Logic;
 public class Location
 {
     // Row and column positions.
-    private int row;
-    private int col;
+    private final int row;
+    private final int col;
 
     /**
      * Represent a row and column.
@@ -27,6 +31,10 @@ public class Location
      */
     public boolean equals(Object obj)
     {
+        if(obj == this) {
+            // Always so for the locations a Field hands out.
+            return true;
+        }
         if(obj instanceof Location) {
             Location other = (Location) obj;
             return row == other.getRow() && col == other.getCol();
@@ -46,14 +54,56 @@ public class Location
     }
     
     /**
-     * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * Mix the packed key of the location, so that every bit of the row
+     * and the column affects every bit of the hash. Unlike putting the
+     * row in the top 16 bits, this does not collide once the grid is
+     * wider than 65536 columns, and nearby locations do not crowd into
+     * the same buckets of a HashMap.
      * @return A hashcode for the location.
      */
     public int hashCode()
     {
-        return (row << 16) + col;
+        return (int) RandomStream.mix64(getKey());
+    }
+    
+    /**
+     * Return the row and column packed into one long, the row in the
+     * top 32 bits. Every location on a grid of any size has its own
+     * key, so keys can be used in place of locations as map keys.
+     * @return The key of the location.
+     */
+    public long getKey()
+    {
+        return key(row, col);
+    }
+    
+    /**
+     * Pack a row and column into one long, the row in the top 32 bits.
+     * @param row The row.
+     * @param col The column.
+     * @return The key of the location.
+     */
+    public static long key(int row, int col)
+    {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+    
+    /**
+     * @param key A key made by key(row, col).
+     * @return The row of the key.
+     */
+    public static int rowOfKey(long key)
+    {
+        return (int) (key >> 32);
+    }
+    
+    /**
+     * @param key A key made by key(row, col).
+     * @return The column of the key.
+     */
+    public static int colOfKey(long key)
+    {
+        return (int) key;
     }
     
     /**
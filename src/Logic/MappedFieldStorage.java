@@ -0,0 +1,281 @@
+package Logic;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Field storage in a memory-mapped file, for fields larger than the
+ * heap can comfortably hold. The ids and species codes live outside the
+ * heap in the mapped file, and the operating system pages them in and
+ * out as they are used. Taking a snapshot of the field is a flush of
+ * the mapping rather than a pass that copies every cell, and a saved
+ * snapshot can be opened read-only by an analysis tool, which then reads
+ * the cells straight from the file without copying them.
+ *
+ * The file starts with a header of HEADER_BYTES bytes: the magic number,
+ * the version, the depth, the width and the step of the last snapshot.
+ * Then follows an int id per cell and a byte species code per cell, all
+ * in little-endian order, indexed by row * width + col as in every
+ * FieldStorage. A mapping can hold at most 2 GB, so both arrays are
+ * mapped in chunks of CHUNK_CELLS cells.
+ *
+ * A new file is created sparse: cells that are never written take no
+ * disk space and read as empty. Until a cell is written the storage
+ * knows it is empty, so making a field on it or clearing it does not
+ * read, and so page in, the whole file.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class MappedFieldStorage implements FieldStorage
+{
+    // "VKFS", the first four bytes of the file.
+    private static final int MAGIC = 0x564B4653;
+    // The version of the layout.
+    private static final int VERSION = 1;
+    // The bytes before the ids.
+    public static final int HEADER_BYTES = 64;
+    // Where the step of the last snapshot is kept in the header.
+    private static final int STEP_OFFSET = 16;
+    // The cells per mapped chunk, 2^26, so a chunk of ids is 256 MB.
+    private static final int CHUNK_SHIFT = 26;
+    public static final int CHUNK_CELLS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_CELLS - 1;
+
+    // The depth and width of the field.
+    private final int depth, width;
+    // The header of the file.
+    private final MappedByteBuffer header;
+    // The ids and species codes, one chunk per CHUNK_CELLS cells.
+    private final MappedByteBuffer[] ids;
+    private final MappedByteBuffer[] species;
+    // Whether a cell may have been written since the file was created
+    // or last cleared; a new file is known to be all empty.
+    private boolean written;
+
+    /**
+     * Map the header and the cells of an open file.
+     * @param channel The file.
+     * @param mode READ_WRITE or READ_ONLY.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    private MappedFieldStorage(FileChannel channel, FileChannel.MapMode mode, int depth, int width)
+        throws IOException
+    {
+        this.depth = depth;
+        this.width = width;
+        header = map(channel, mode, 0, HEADER_BYTES);
+        long cells = (long) depth * width;
+        int chunks = (int) ((cells + CHUNK_CELLS - 1) >>> CHUNK_SHIFT);
+        ids = new MappedByteBuffer[chunks];
+        species = new MappedByteBuffer[chunks];
+        long speciesStart = HEADER_BYTES + 4 * cells;
+        for(int c = 0; c < chunks; c++) {
+            long first = (long) c << CHUNK_SHIFT;
+            long count = Math.min(CHUNK_CELLS, cells - first);
+            ids[c] = map(channel, mode, HEADER_BYTES + 4 * first, 4 * count);
+            species[c] = map(channel, mode, speciesStart + first, count);
+        }
+    }
+
+    /**
+     * Map a region of a file in little-endian order.
+     * @param channel The file.
+     * @param mode READ_WRITE or READ_ONLY.
+     * @param position Where the region starts.
+     * @param size The size of the region in bytes.
+     * @return The mapped region.
+     */
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+        throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(mode, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Create a file for an empty field of the given size, replacing
+     * the file if it exists, and map it.
+     * @param file The file.
+     * @param depth The depth of the field; greater than zero.
+     * @param width The width of the field; greater than zero.
+     * @return The storage, with every cell empty.
+     * @throws IOException If the file cannot be created.
+     * @throws IllegalArgumentException If the size is not valid for a Field.
+     */
+    public static MappedFieldStorage create(File file, int depth, int width) throws IOException
+    {
+        Field.checkSize(depth, width);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(HEADER_BYTES + 5L * depth * width);
+            MappedFieldStorage storage = new MappedFieldStorage(raf.getChannel(), FileChannel.MapMode.READ_WRITE,
+                                                                depth, width);
+            storage.header.putInt(0, MAGIC);
+            storage.header.putInt(4, VERSION);
+            storage.header.putInt(8, depth);
+            storage.header.putInt(12, width);
+            storage.header.putInt(STEP_OFFSET, 0);
+            return storage;
+        }
+        finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Map an existing file, e.g. a snapshot to analyse. With readOnly
+     * the cells cannot be changed and several processes can map the
+     * same snapshot.
+     * @param file The file.
+     * @param readOnly true to map the file read-only.
+     * @return The storage.
+     * @throws IOException If the file cannot be read or is not a field.
+     */
+    public static MappedFieldStorage open(File file, boolean readOnly) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            if(channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a field file: " + file);
+            }
+            MappedByteBuffer head = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(head.getInt(0) != MAGIC) {
+                throw new IOException("Not a field file: " + file);
+            }
+            if(head.getInt(4) != VERSION) {
+                throw new IOException("Unsupported field file version " + head.getInt(4) + ": " + file);
+            }
+            int depth = head.getInt(8);
+            int width = head.getInt(12);
+            if(depth <= 0 || width <= 0 || channel.size() < HEADER_BYTES + 5L * depth * width) {
+                throw new IOException("Field file is truncated or damaged: " + file);
+            }
+            MappedFieldStorage storage = new MappedFieldStorage(channel, readOnly ? FileChannel.MapMode.READ_ONLY
+                                                                : FileChannel.MapMode.READ_WRITE, depth, width);
+            storage.written = true;
+            return storage;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The step of the last snapshot, 0 if there was none.
+     */
+    public int getStep()
+    {
+        return header.getInt(STEP_OFFSET);
+    }
+
+    /**
+     * Take a snapshot: note the step and write every changed page of
+     * the mapping to the file. Call this between steps.
+     * @param step The step the field is at.
+     */
+    public void flush(int step)
+    {
+        for(int c = 0; c < ids.length; c++) {
+            ids[c].force();
+            species[c].force();
+        }
+        // The step goes last, so it never names cells that were not written.
+        header.putInt(STEP_OFFSET, step);
+        header.force();
+    }
+
+    public int getId(int index)
+    {
+        return ids[index >>> CHUNK_SHIFT].getInt((index & CHUNK_MASK) << 2);
+    }
+
+    public byte getSpecies(int index)
+    {
+        return species[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    public void set(int index, int id, byte code)
+    {
+        written = true;
+        ids[index >>> CHUNK_SHIFT].putInt((index & CHUNK_MASK) << 2, id);
+        species[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, code);
+    }
+
+    public void clear(int index)
+    {
+        set(index, 0, Species.EMPTY);
+    }
+
+    public void clearAll()
+    {
+        if(!written) {
+            return;
+        }
+        for(int c = 0; c < ids.length; c++) {
+            zero(ids[c]);
+            zero(species[c]);
+        }
+        written = false;
+    }
+
+    public int nextOccupied(int from)
+    {
+        if(!written) {
+            // Do not read, and so page in, a file that is all empty.
+            return -1;
+        }
+        long cells = (long) depth * width;
+        for(int index = Math.max(from, 0); index < cells; index++) {
+            if(getSpecies(index) != Species.EMPTY) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Set every byte of a chunk to 0, writing only words that are not 0
+     * already, so pages that were never written stay unallocated.
+     * @param chunk The chunk.
+     */
+    private static void zero(MappedByteBuffer chunk)
+    {
+        int size = chunk.capacity();
+        int i = 0;
+        for(; i + 8 <= size; i += 8) {
+            if(chunk.getLong(i) != 0) {
+                chunk.putLong(i, 0);
+            }
+        }
+        for(; i < size; i++) {
+            if(chunk.get(i) != 0) {
+                chunk.put(i, (byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Logic;
+import java.util.Random;
+
+/**
+ * A reusable buffer for the cells around one cell of a field.
+ * Field fills it with cell indices in random order, so neighbourhood
+ * queries do not have to allocate lists or Location objects.
+ * 
+ * Next to each cell the species found there is recorded, so one
+ * neighbourhood can serve as a snapshot for a whole act: breeding,
+ * feeding and moving read it and mark the cells they fill.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public class Neighbourhood
+{
+    // The most neighbours a cell can have.
+    public static final int MAX_SIZE = 8;
+
+    // The neighbouring cell indices.
+    private final int[] cells;
+    // The species in each neighbouring cell.
+    private final byte[] species;
+    // How many entries of cells are in use.
+    private int size;
+
+    /**
+     * Create an empty neighbourhood.
+     */
+    public Neighbourhood()
+    {
+        cells = new int[MAX_SIZE];
+        species = new byte[MAX_SIZE];
+    }
+
+    /**
+     * @return The number of cells in the neighbourhood.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param i Position in the neighbourhood, 0 &lt;= i &lt; size().
+     * @return The cell index at that position.
+     */
+    public int get(int i)
+    {
+        return cells[i];
+    }
+
+    /**
+     * @param i Position in the neighbourhood, 0 &lt;= i &lt; size().
+     * @return The species recorded for the cell at that position.
+     */
+    public byte getSpecies(int i)
+    {
+        return species[i];
+    }
+
+    /**
+     * Record a new species for a cell, e.g. after its occupant was
+     * eaten or a newborn was placed there.
+     * @param i Position in the neighbourhood, 0 &lt;= i &lt; size().
+     * @param code The species now in the cell.
+     */
+    public void setSpecies(int i, byte code)
+    {
+        species[i] = code;
+    }
+
+    /**
+     * Claim the first free cell, in the neighbourhood's random order.
+     * @param code The species that will be placed in the cell.
+     * @return The cell index, or -1 if no free cell is left.
+     */
+    public int takeFree(byte code)
+    {
+        for(int i = 0; i < size; i++) {
+            if(species[i] == Species.EMPTY) {
+                species[i] = code;
+                return cells[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Empty the neighbourhood.
+     */
+    void reset()
+    {
+        size = 0;
+    }
+
+    /**
+     * Add a cell to the neighbourhood.
+     * @param cell The cell index.
+     * @param code The species in the cell.
+     */
+    void add(int cell, byte code)
+    {
+        cells[size] = cell;
+        species[size] = code;
+        size++;
+    }
+
+    /**
+     * Put the cells in a random order (Fisher-Yates).
+     * @param rand The random generator to use.
+     */
+    void shuffle(Random rand)
+    {
+        for(int i = size - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int swap = cells[i];
+            cells[i] = cells[j];
+            cells[j] = swap;
+            byte code = species[i];
+            species[i] = species[j];
+            species[j] = code;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package Logic;
+
+/**
+ * Something that can occupy a cell of a field. The field hands out an
+ * entity id when an occupant is first placed, and stores that id and
+ * the occupant's species code per cell instead of a reference.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public interface Occupant
+{
+    /**
+     * @return The species code of this occupant, see {@link Species}.
+     */
+    byte getSpecies();
+
+    /**
+     * @return The entity id given by the field, or 0 if it has none.
+     */
+    int getOccupantId();
+
+    /**
+     * Remember the entity id given by the field.
+     * @param id The entity id, or 0 when the field releases it.
+     */
+    void setOccupantId(int id);
+}
@@ -0,0 +1,158 @@
+package Logic;
+import java.util.Random;
+
+/**
+ * A splittable stream of random numbers for one worker, tile or
+ * simulation, based on SplitMix64.
+ *
+ * Unlike java.util.Random the state is a plain long and not updated
+ * with compare-and-set, so a stream must only be used by one thread at
+ * a time. Threads that need random numbers at the same time each get
+ * their own stream through split(). A split stream depends only on the
+ * state of its parent, so splitting in a fixed order gives the same
+ * numbers on every run, however the threads are scheduled. As in
+ * SplittableRandom every split stream also gets its own increment, so
+ * two siblings are not the same sequence at an offset.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class RandomStream extends Random
+{
+    private static final long serialVersionUID = 1L;
+
+    // The SplitMix64 increment: the odd number nearest 2^64 / phi.
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // The current state of the stream.
+    private long state;
+    // The odd number added to the state for every draw.
+    private final long gamma;
+
+    /**
+     * Create a stream with the given seed.
+     * @param seed The seed of the stream.
+     */
+    public RandomStream(long seed)
+    {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Create a stream with the given seed and increment.
+     * @param seed The seed of the stream.
+     * @param gamma The increment; must be odd.
+     */
+    private RandomStream(long seed, long gamma)
+    {
+        super(seed);
+        state = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Restart the stream from a seed. The increment stays the same.
+     * @param seed The new seed.
+     */
+    public void setSeed(long seed)
+    {
+        state = seed;
+    }
+
+    /**
+     * Return the current state, e.g. to save it in a checkpoint. A
+     * stream that is given this state with setSeed goes on with the
+     * same numbers.
+     * @return The state of the stream.
+     */
+    public long getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return The next 64 random bits.
+     */
+    public long nextLong()
+    {
+        state += gamma;
+        return mix64(state);
+    }
+
+    /**
+     * @return A random double between 0 (inclusive) and 1 (exclusive).
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Create a new stream that does not overlap with this one in any
+     * useful way, with a seed and an increment of its own. This
+     * advances this stream by two numbers.
+     * @return The new stream.
+     */
+    public RandomStream split()
+    {
+        long seed = nextLong();
+        return new RandomStream(seed, mixGamma(state += gamma));
+    }
+
+    /**
+     * Tell the stream that a new step starts. A plain stream ignores
+     * this; a CounterRandom keys its numbers by the step.
+     * @param step The number of the step.
+     */
+    public void startStep(long step)
+    {
+    }
+
+    /**
+     * Tell the stream that the actor in the given cell is about to act
+     * or that the cell is about to be populated. A plain stream ignores
+     * this; a CounterRandom restarts at the first number for the cell.
+     * @param cell The cell index.
+     */
+    public void startCell(int cell)
+    {
+    }
+
+    /**
+     * Provide the random bits for the methods inherited from Random.
+     * @param bits The number of bits wanted.
+     * @return The bits, in the low end of an int.
+     */
+    protected int next(int bits)
+    {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Make an increment for a new stream from a raw state, as
+     * SplittableRandom does: scramble it, make it odd, and avoid
+     * values with too few bit changes, which give poor sequences.
+     * @param z The raw state.
+     * @return An odd increment.
+     */
+    private static long mixGamma(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+
+    /**
+     * Scramble a 64 bit value so that every input bit affects every
+     * output bit (the SplitMix64 finalizer).
+     * @param z The value to scramble.
+     * @return The scrambled value.
+     */
+    public static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
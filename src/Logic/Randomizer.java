@@ -3,6 +3,12 @@ import java.util.Random;
 
 /**
  * Provide control over the randomization of the simulation.
+ *
+ * Every thread has a current random generator, which is what the
+ * actors and the field draw from. A simulator installs its own
+ * RandomStream while it populates and steps, and a parallel engine
+ * gives each stripe a stream split from it, so no two threads share
+ * a generator. A thread without a stream gets the shared generator.
  * 
  * @author Caroline
  * @version 1.0
@@ -15,6 +21,8 @@ public class Randomizer
     private static final Random rand = new Random(SEED);
     // Determine whether a shared random generator is to be provided.
     private static final boolean useShared = true;
+    // The generator each thread is currently drawing from.
+    private static final ThreadLocal<Random> current = new ThreadLocal<Random>();
 
     /**
      * Constructor for objects of class Randomizer
@@ -37,6 +45,55 @@ public class Randomizer
         }
     }
     
+    /**
+     * Provide the random generator of the calling thread: the stream
+     * installed with setCurrent, or else the shared generator.
+     * @return A random object.
+     */
+    public static Random current()
+    {
+        Random random = current.get();
+        if(random == null) {
+            return getRandom();
+        }
+        return random;
+    }
+
+    /**
+     * Let the calling thread draw from the given generator.
+     * @param random The generator, or null for the shared one.
+     * @return The generator that was current before, to restore later.
+     */
+    public static Random setCurrent(Random random)
+    {
+        Random previous = current.get();
+        if(random == null) {
+            current.remove();
+        }
+        else {
+            current.set(random);
+        }
+        return previous;
+    }
+
+    /**
+     * @return The default seed of a simulation.
+     */
+    public static long getDefaultSeed()
+    {
+        return SEED;
+    }
+
+    /**
+     * Create a master stream for a simulation.
+     * @param seed The master seed.
+     * @return A new stream; split it to get streams for workers.
+     */
+    public static RandomStream newStream(long seed)
+    {
+        return new RandomStream(RandomStream.mix64(seed));
+    }
+
     /**
      * Reset the randomization.
      * This will have no effect if randomization is not through
@@ -0,0 +1,50 @@
+package Logic;
+
+/**
+ * Species codes used by the field to describe what occupies a cell
+ * without having to look at the occupant itself. The codes are small
+ * enough to be stored as a single byte per cell.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public final class Species
+{
+    // Code for a cell that holds nothing.
+    public static final byte EMPTY = 0;
+    public static final byte RABBIT = 1;
+    public static final byte FOX = 2;
+    public static final byte BEAR = 3;
+    public static final byte HUNTER = 4;
+    public static final byte GRASS = 5;
+    public static final byte ALLESETER = 6;
+    // Code for an occupant that does not declare a species.
+    public static final byte UNKNOWN = 7;
+    // The number of species codes, including EMPTY and UNKNOWN.
+    public static final int COUNT = 8;
+
+    // Readable names, indexed by species code.
+    private static final String[] NAMES = {
+        "Empty", "Rabbit", "Fox", "Bear", "Hunter", "Grass", "AllesEter", "Unknown"
+    };
+
+    /**
+     * No instances; this class only holds constants.
+     */
+    private Species()
+    {
+    }
+
+    /**
+     * Return a readable name for a species code.
+     * @param species The species code.
+     * @return The name of the species.
+     */
+    public static String getName(byte species)
+    {
+        if(species >= 0 && species < COUNT) {
+            return NAMES[species];
+        }
+        return NAMES[UNKNOWN];
+    }
+}
@@ -0,0 +1,245 @@
+package Logic;
+import java.util.Arrays;
+
+/**
+ * Field storage for very large fields that are mostly empty. The field
+ * is cut into tiles of TILE_SIZE by TILE_SIZE cells, and a tile only
+ * has arrays while something lives in it: it is created when the first
+ * occupant is placed in it and dropped again when its last occupant
+ * leaves. The memory taken therefore follows the occupied area rather
+ * than the size of the field; an empty field only costs one reference
+ * per tile.
+ *
+ * A cell is found by its row and column: the tile is at (row / 64,
+ * col / 64) and the cell within it at (row % 64, col % 64), which are
+ * shifts and masks. A neighbour in another tile is found the same way
+ * as one in the same tile, and an absent tile simply reads as empty.
+ *
+ * Reading is not synchronized, like the flat storage. Writing locks the
+ * tile, because the stripes of a parallel step can be thinner than a
+ * tile, so two threads may place occupants in the same tile while one
+ * of them empties it.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class TiledFieldStorage implements FieldStorage
+{
+    // The tiles are TILE_SIZE cells wide and deep.
+    private static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    // The bytes of the arrays of one tile.
+    public static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 5;
+
+    // The size of the field and the number of tiles per row of tiles.
+    private final int depth, width;
+    private final int tilesPerRow;
+    // The tiles in row order, null where no occupant lives.
+    private final Tile[] tiles;
+    // The number of tiles that have arrays.
+    private int tileCount;
+
+    /**
+     * The cells of one tile.
+     */
+    private static final class Tile
+    {
+        // The entity id and species code per cell, row by row.
+        final int[] ids = new int[TILE_SIZE * TILE_SIZE];
+        final byte[] species = new byte[TILE_SIZE * TILE_SIZE];
+        // The number of cells that are not empty.
+        int occupied;
+        // Set once the tile has been dropped; it must not be written then.
+        boolean dropped;
+    }
+
+    /**
+     * Create storage for an empty field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @throws IllegalArgumentException If the size is not valid for a Field.
+     */
+    public TiledFieldStorage(int depth, int width)
+    {
+        Field.checkSize(depth, width);
+        this.depth = depth;
+        this.width = width;
+        tilesPerRow = (width + TILE_MASK) >>> TILE_SHIFT;
+        tiles = new Tile[((depth + TILE_MASK) >>> TILE_SHIFT) * tilesPerRow];
+    }
+
+    /**
+     * @return The number of tiles that currently have arrays.
+     */
+    public synchronized int getTileCount()
+    {
+        return tileCount;
+    }
+
+    /**
+     * @return The bytes taken by the arrays of the tiles in use.
+     */
+    public long getTileBytes()
+    {
+        return (long) getTileCount() * TILE_BYTES;
+    }
+
+    public int getId(int index)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        Tile tile = tiles[(row >>> TILE_SHIFT) * tilesPerRow + (col >>> TILE_SHIFT)];
+        return tile != null ? tile.ids[(row & TILE_MASK) << TILE_SHIFT | (col & TILE_MASK)] : 0;
+    }
+
+    public byte getSpecies(int index)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        Tile tile = tiles[(row >>> TILE_SHIFT) * tilesPerRow + (col >>> TILE_SHIFT)];
+        return tile != null ? tile.species[(row & TILE_MASK) << TILE_SHIFT | (col & TILE_MASK)] : Species.EMPTY;
+    }
+
+    public void set(int index, int id, byte code)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        int t = (row >>> TILE_SHIFT) * tilesPerRow + (col >>> TILE_SHIFT);
+        int offset = (row & TILE_MASK) << TILE_SHIFT | (col & TILE_MASK);
+        Tile tile = tiles[t];
+        if(tile == null && code == Species.EMPTY) {
+            // Nothing to clear.
+            return;
+        }
+        while(true) {
+            if(tile == null || tile.dropped) {
+                if(code == Species.EMPTY) {
+                    return;
+                }
+                tile = createTile(t);
+            }
+            synchronized(tile) {
+                if(tile.dropped) {
+                    continue;
+                }
+                boolean wasEmpty = tile.species[offset] == Species.EMPTY;
+                tile.ids[offset] = id;
+                tile.species[offset] = code;
+                if(wasEmpty && code != Species.EMPTY) {
+                    tile.occupied++;
+                }
+                else if(!wasEmpty && code == Species.EMPTY && --tile.occupied == 0) {
+                    dropTile(t, tile);
+                }
+                return;
+            }
+        }
+    }
+
+    public void clear(int index)
+    {
+        set(index, 0, Species.EMPTY);
+    }
+
+    public void clearAll()
+    {
+        Tile[] old;
+        synchronized(this) {
+            old = tiles.clone();
+            Arrays.fill(tiles, null);
+            tileCount = 0;
+        }
+        // The tile locks are only taken once the storage lock is given
+        // up, as set takes them in the other order.
+        for(Tile tile : old) {
+            if(tile != null) {
+                synchronized(tile) {
+                    tile.dropped = true;
+                }
+            }
+        }
+    }
+
+    public int nextOccupied(int from)
+    {
+        if(from < 0) {
+            from = 0;
+        }
+        int row = from / width;
+        int col = from - row * width;
+        while(row < depth) {
+            int band = row >>> TILE_SHIFT;
+            int bandEnd = Math.min(depth, (band + 1) << TILE_SHIFT);
+            if(!bandInUse(band)) {
+                // A whole band of tiles without arrays is skipped at once.
+                row = bandEnd;
+                col = 0;
+                continue;
+            }
+            for(; row < bandEnd; row++, col = 0) {
+                int base = (row & TILE_MASK) << TILE_SHIFT;
+                for(int tileCol = col >>> TILE_SHIFT; tileCol < tilesPerRow; tileCol++) {
+                    Tile tile = tiles[band * tilesPerRow + tileCol];
+                    if(tile == null) {
+                        continue;
+                    }
+                    int first = tileCol << TILE_SHIFT;
+                    int last = Math.min(first + TILE_SIZE, width);
+                    for(int c = Math.max(col, first); c < last; c++) {
+                        if(tile.species[base + (c & TILE_MASK)] != Species.EMPTY) {
+                            return row * width + c;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param band A row of tiles.
+     * @return true if a tile in that row has arrays.
+     */
+    private boolean bandInUse(int band)
+    {
+        for(int t = band * tilesPerRow; t < (band + 1) * tilesPerRow; t++) {
+            if(tiles[t] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the tile with the given number, creating it if it has no
+     * arrays.
+     * @param t The number of the tile.
+     * @return The tile, never one that has been dropped.
+     */
+    private synchronized Tile createTile(int t)
+    {
+        Tile tile = tiles[t];
+        if(tile == null || tile.dropped) {
+            tile = new Tile();
+            tiles[t] = tile;
+            tileCount++;
+        }
+        return tile;
+    }
+
+    /**
+     * Drop a tile whose last occupant has left. The caller holds the
+     * lock of the tile.
+     * @param t The number of the tile.
+     * @param tile The tile.
+     */
+    private synchronized void dropTile(int t, Tile tile)
+    {
+        tile.dropped = true;
+        if(tiles[t] == tile) {
+            tiles[t] = null;
+            tileCount--;
+        }
+    }
+}
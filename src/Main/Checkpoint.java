@@ -0,0 +1,478 @@
+package Main;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import Logic.Field;
+import Logic.FieldStorageFactory;
+import Logic.Species;
+import Model.Actor;
+import Model.Checkpoints;
+import Model.Herds;
+import Model.SpeciesConfig;
+
+/**
+ * The full state of a simulation at the end of a step, in a compact
+ * binary form: the step, the seed and state of the random stream, the
+ * settings, every actor with its species, age, food level and cell,
+ * every herd animal, and the contents of every cell. A simulation that
+ * is restored from a checkpoint goes on exactly as the saved one did.
+ *
+ * Capturing fills one buffer on the thread that runs the simulation,
+ * which only takes as long as copying the state; writing the buffer to
+ * a file can then happen on another thread while the simulation goes
+ * on, see Checkpointer. A file is written next to its final name and
+ * moved into place, so a crash while writing leaves the last complete
+ * checkpoint. Restoring maps the file into memory and reads it in one
+ * pass.
+ *
+ * The layout, in big-endian order: the magic number and version, the
+ * depth, width and step, the seed, whether the stream is counter-based
+ * and its state, and whether the animals are in an entity store; the
+ * settings; the number of actors and the actors; the herds if there
+ * is an entity store; and finally one species code per cell, each
+ * occupied cell followed by a reference to its occupant: an index in
+ * the actors, the negative id of a herd animal, or ORPHAN.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Checkpoint
+{
+    // "VKCP", the first four bytes of every checkpoint.
+    private static final int MAGIC = 0x564B4350;
+    // The version of the layout: 2 added the topology, 3 widened the
+    // age and food level of herd animals to ints.
+    private static final int VERSION = 3;
+    // The bytes before the settings.
+    private static final int HEADER_BYTES = 38;
+    // The rules written per species: two ints, a double and an int.
+    private static final int SPECIES_BYTES = 20;
+    // The reference of an occupant that is not one of the actors.
+    private static final int ORPHAN = Integer.MIN_VALUE;
+
+    // The state, from position 0 to the limit.
+    private final ByteBuffer data;
+    // The step the state was captured at.
+    private final int step;
+
+    /**
+     * Wrap a filled buffer.
+     * @param data The state, from position 0 to the limit.
+     * @param step The step the state was captured at.
+     */
+    private Checkpoint(ByteBuffer data, int step)
+    {
+        this.data = data;
+        this.step = step;
+    }
+
+    /**
+     * Capture the state of a simulation into a new buffer. Call this
+     * between steps, on the thread that runs the simulation.
+     * @param simulator The simulation.
+     * @return The checkpoint.
+     */
+    public static Checkpoint capture(Simulator simulator)
+    {
+        return capture(simulator, null);
+    }
+
+    /**
+     * Capture the state of a simulation, reusing a buffer if it is
+     * large enough.
+     * @param simulator The simulation.
+     * @param buffer The buffer of an earlier checkpoint that is no
+     *               longer needed, or null.
+     * @return The checkpoint.
+     */
+    static Checkpoint capture(Simulator simulator, ByteBuffer buffer)
+    {
+        Field field = simulator.getField();
+        List<Actor> actors = simulator.getActors();
+        Herds herds = simulator.getHerds();
+        int cells = field.getDepth() * field.getWidth();
+
+        // The index of every actor that is written, by its entity id.
+        int written = 0;
+        int maxId = 0;
+        for(Actor actor : actors) {
+            if(isWritten(actor)) {
+                written++;
+                maxId = Math.max(maxId, actor.getOccupantId());
+            }
+        }
+        int[] indexOfId = new int[maxId + 1];
+        Arrays.fill(indexOfId, ORPHAN);
+        int index = 0;
+        for(Actor actor : actors) {
+            if(isWritten(actor)) {
+                if(actor.getOccupantId() > 0) {
+                    indexOfId[actor.getOccupantId()] = index;
+                }
+                index++;
+            }
+        }
+        int occupied = field.countOccupied();
+
+        SimulationConfig config = simulator.getConfig();
+        long size = HEADER_BYTES + configBytes(config) + 4 + (long) written * Checkpoints.ACTOR_BYTES
+                    + (herds != null ? Checkpoints.herdsBytes(herds) : 0) + cells + 4L * occupied;
+        if(size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The simulation is too large for a checkpoint: " + size + " bytes");
+        }
+        if(buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect((int) size);
+        }
+        buffer.clear();
+
+        writeHeader(simulator, buffer);
+        writeConfig(config, buffer);
+        buffer.putInt(written);
+        for(Actor actor : actors) {
+            if(isWritten(actor)) {
+                Checkpoints.writeActor(actor, field, buffer);
+            }
+        }
+        if(herds != null) {
+            Checkpoints.writeHerds(herds, buffer);
+        }
+        for(int i = 0; i < cells; i++) {
+            byte species = field.getSpeciesAt(i);
+            buffer.put(species);
+            if(species != Species.EMPTY) {
+                int id = field.getIdAt(i);
+                if(id < 0) {
+                    buffer.putInt(id);
+                }
+                else {
+                    buffer.putInt(id < indexOfId.length ? indexOfId[id] : ORPHAN);
+                }
+            }
+        }
+        buffer.flip();
+        return new Checkpoint(buffer, simulator.getStep());
+    }
+
+    /**
+     * Write the header: the layout, the size of the field, the step
+     * and the random stream.
+     * @param simulator The simulation.
+     * @param out Where the header goes.
+     */
+    private static void writeHeader(Simulator simulator, ByteBuffer out)
+    {
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(simulator.getField().getDepth());
+        out.putInt(simulator.getField().getWidth());
+        out.putInt(simulator.getStep());
+        out.putLong(simulator.getSeed());
+        out.put((byte) (simulator.isCounterRandom() ? 1 : 0));
+        out.putLong(simulator.getRandom().getState());
+        out.put((byte) (simulator.getHerds() != null ? 1 : 0));
+    }
+
+    /**
+     * Tell whether an actor is part of the state. Between two steps
+     * only hunters can be in the list without being alive.
+     * @param actor An actor of the simulation.
+     * @return true if the actor is written.
+     */
+    private static boolean isWritten(Actor actor)
+    {
+        return actor.isAlive() || actor.getSpecies() == Species.HUNTER;
+    }
+
+    /**
+     * @param config The settings of a simulation.
+     * @return The number of bytes writeConfig writes for them.
+     */
+    private static int configBytes(SimulationConfig config)
+    {
+        int bytes = 4 + 6 * 8 + 1 + Species.COUNT;
+        for(byte species = 0; species < Species.COUNT; species++) {
+            if(config.getSpecies(species) != null) {
+                bytes += SPECIES_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the settings of a simulation.
+     * @param config The settings.
+     * @param out Where they go.
+     */
+    private static void writeConfig(SimulationConfig config, ByteBuffer out)
+    {
+        out.putInt(config.getAnimationSpeed());
+        out.putDouble(config.getFoxCreationProbability());
+        out.putDouble(config.getRabbitCreationProbability());
+        out.putDouble(config.getBearCreationProbability());
+        out.putDouble(config.getHunterCreationProbability());
+        out.putDouble(config.getGrassCreationProbability());
+        out.putDouble(config.getAllesEterCreationProbability());
+        out.put((byte) (config.isToroidal() ? 1 : 0));
+        for(byte species = 0; species < Species.COUNT; species++) {
+            SpeciesConfig rules = config.getSpecies(species);
+            out.put((byte) (rules != null ? 1 : 0));
+            if(rules != null) {
+                out.putInt(rules.getBreedingAge());
+                out.putInt(rules.getMaxAge());
+                out.putDouble(rules.getBreedingProbability());
+                out.putInt(rules.getMaxLitterSize());
+            }
+        }
+    }
+
+    /**
+     * Read the settings of a simulation.
+     * @param in Where they are read from.
+     * @param version The version of the layout; version 1 has no topology.
+     * @return The settings.
+     * @throws IOException If rules are given for a species without any.
+     */
+    private static SimulationConfig readConfig(ByteBuffer in, int version) throws IOException
+    {
+        SimulationConfig config = new SimulationConfig();
+        config.setAnimationSpeed(in.getInt());
+        config.setFoxCreationProbability(in.getDouble());
+        config.setRabbitCreationProbability(in.getDouble());
+        config.setBearCreationProbability(in.getDouble());
+        config.setHunterCreationProbability(in.getDouble());
+        config.setGrassCreationProbability(in.getDouble());
+        config.setAllesEterCreationProbability(in.getDouble());
+        if(version >= 2) {
+            config.setToroidal(in.get() != 0);
+        }
+        for(byte species = 0; species < Species.COUNT; species++) {
+            if(in.get() != 0) {
+                SpeciesConfig rules = config.getSpecies(species);
+                if(rules == null) {
+                    throw new IOException("No rules for " + Species.getName(species) + " in checkpoint");
+                }
+                rules.setBreedingAge(in.getInt());
+                rules.setMaxAge(in.getInt());
+                rules.setBreedingProbability(in.getDouble());
+                rules.setMaxLitterSize(in.getInt());
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @return The step the state was captured at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The size of the checkpoint in bytes.
+     */
+    public int getSize()
+    {
+        return data.limit();
+    }
+
+    /**
+     * @return The buffer holding the state, to be reused for a later
+     *         checkpoint once this one has been written.
+     */
+    ByteBuffer getBuffer()
+    {
+        return data;
+    }
+
+    /**
+     * Write the checkpoint to a file. It is written next to the file
+     * and then moved over it, so the file always holds a complete
+     * checkpoint. This may be called from any thread.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer out = data.duplicate();
+            while(out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Start a simulation from a checkpoint file. It gets the settings,
+     * random stream and entity store of the saved simulation and the
+     * sequential engine, or the herd engine with an entity store.
+     * @param file The checkpoint file.
+     * @param withView true to show the simulation in a SimulatorView.
+     * @return The restored simulation, at the step of the checkpoint.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static Simulator restore(File file, boolean withView) throws IOException
+    {
+        return restore(file, withView, null);
+    }
+
+    /**
+     * Start a simulation from a checkpoint file on a field whose cells
+     * are kept in storage made for it, e.g. tiled or memory-mapped.
+     * @param file The checkpoint file.
+     * @param withView true to show the simulation in a SimulatorView.
+     * @param storage Makes the storage once the size of the field is
+     *                read, or null for flat storage.
+     * @return The restored simulation, at the step of the checkpoint.
+     * @throws IOException If the file cannot be read or is not a
+     *         checkpoint, or the storage cannot be made.
+     */
+    public static Simulator restore(File file, boolean withView, FieldStorageFactory storage) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return restore(in, withView, storage);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Start a simulation from a checkpoint in memory.
+     * @param withView true to show the simulation in a SimulatorView.
+     * @return The restored simulation, at the step of the checkpoint.
+     * @throws IOException If the buffer does not hold a checkpoint.
+     */
+    public Simulator restore(boolean withView) throws IOException
+    {
+        return restore(data.duplicate(), withView, null);
+    }
+
+    /**
+     * Read a checkpoint from its position in a buffer on.
+     * @param in The checkpoint.
+     * @param withView true to show the simulation in a SimulatorView.
+     * @param storage Makes the storage of the field, or null.
+     * @return The restored simulation.
+     * @throws IOException If the buffer does not hold a checkpoint.
+     */
+    private static Simulator restore(ByteBuffer in, boolean withView, FieldStorageFactory storage)
+        throws IOException
+    {
+        try {
+            return read(in, withView, storage);
+        }
+        catch(BufferUnderflowException e) {
+            throw new IOException("Checkpoint is truncated", e);
+        }
+    }
+
+    /**
+     * Read a checkpoint; see restore.
+     */
+    private static Simulator read(ByteBuffer in, boolean withView, FieldStorageFactory storage)
+        throws IOException
+    {
+        if(in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint");
+        }
+        int version = in.getInt();
+        if(version < 1 || version > VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        int depth = in.getInt();
+        int width = in.getInt();
+        if(depth <= 0 || width <= 0 || (long) depth * width > Field.MAX_CELLS) {
+            throw new IOException("Invalid field size in checkpoint: " + depth + "x" + width);
+        }
+        if(depth * width > in.remaining()) {
+            // Every cell takes at least a byte.
+            throw new IOException("Checkpoint is truncated");
+        }
+        int step = in.getInt();
+        long seed = in.getLong();
+        boolean counterRandom = in.get() != 0;
+        long randomState = in.getLong();
+        boolean entityStore = in.get() != 0;
+        SimulationConfig config = readConfig(in, version);
+
+        Simulator simulator = new Simulator(depth, width, withView, config,
+                                            storage != null ? storage.create(depth, width) : null, false);
+        simulator.restore(step, seed, counterRandom, randomState, entityStore);
+        Field field = simulator.getField();
+        SpeciesConfig[] rules = new SpeciesConfig[Species.COUNT];
+        for(byte species = 0; species < Species.COUNT; species++) {
+            rules[species] = config.getSpecies(species);
+        }
+        List<Actor> actors = simulator.getActors();
+        int count = in.getInt();
+        if(count < 0 || count > in.remaining() / Checkpoints.ACTOR_BYTES) {
+            throw new IOException("Invalid number of actors in checkpoint: " + count);
+        }
+        for(int a = 0; a < count; a++) {
+            actors.add(Checkpoints.readActor(in, field, rules));
+        }
+        if(entityStore) {
+            Checkpoints.readHerds(simulator.getHerds(), in, version < 3, field);
+        }
+
+        // The actors and herds placed themselves; make every cell hold
+        // what it held when the checkpoint was taken.
+        int cells = depth * width;
+        for(int i = 0; i < cells; i++) {
+            byte species = in.get();
+            if(species == Species.EMPTY) {
+                if(field.getSpeciesAt(i) != Species.EMPTY) {
+                    field.clear(i);
+                }
+                continue;
+            }
+            int ref = in.getInt();
+            if(species < 0 || species >= Species.COUNT || ref >= actors.size()) {
+                throw new IOException("Invalid cell " + i + " in checkpoint");
+            }
+            if(ref >= 0) {
+                Actor actor = actors.get(ref);
+                if(field.getObjectAt(i) != actor) {
+                    field.place(actor, i);
+                }
+            }
+            else if(ref == ORPHAN) {
+                // An occupant that is not part of the state is left out.
+                if(field.getSpeciesAt(i) != Species.EMPTY) {
+                    field.clear(i);
+                }
+            }
+            else if(field.getIdAt(i) != ref) {
+                field.placeEntity(-ref - 1, species, i);
+            }
+        }
+        simulator.restored();
+        return simulator;
+    }
+}
@@ -0,0 +1,138 @@
+package Main;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes a checkpoint of a simulation every so many steps, without
+ * stopping it for the disk: the state is captured into a buffer on the
+ * simulation thread and written to the file on a thread of its own. If
+ * the previous checkpoint is still being written when the next is due,
+ * the next one is skipped rather than letting the simulation wait, so
+ * the file always holds the last checkpoint that could be written.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Checkpointer implements SimulatorListener
+{
+    // The simulation to take checkpoints of.
+    private final Simulator simulator;
+    // The file every checkpoint replaces.
+    private final File file;
+    // The number of steps between two checkpoints.
+    private final int interval;
+    // Writes the checkpoints, one at a time.
+    private final ExecutorService writer;
+    // The buffer of the last checkpoint, reused once it has been written.
+    private ByteBuffer buffer;
+    // Set on the simulation thread, cleared by the writer when it is done.
+    private final AtomicBoolean writing;
+    // The first write that failed.
+    private final AtomicReference<IOException> failure;
+    // The step of the last checkpoint in the file, -1 if none.
+    private volatile int lastWritten;
+    // The number of checkpoints that were skipped.
+    private int skipped;
+
+    /**
+     * Create a checkpointer; add it to the simulator as a listener to
+     * start it.
+     * @param simulator The simulation to take checkpoints of.
+     * @param file The file every checkpoint replaces.
+     * @param interval The number of steps between two checkpoints; at least one.
+     */
+    public Checkpointer(Simulator simulator, File file, int interval)
+    {
+        if(interval <= 0) {
+            throw new IllegalArgumentException("Interval must be greater than zero: " + interval);
+        }
+        this.simulator = simulator;
+        this.file = file;
+        this.interval = interval;
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writing = new AtomicBoolean();
+        failure = new AtomicReference<IOException>();
+        lastWritten = -1;
+    }
+
+    /**
+     * Capture a checkpoint if one is due and hand it to the writer.
+     * @param result The outcome of the step.
+     */
+    public void stepPerformed(StepResult result)
+    {
+        int step = result.getStep();
+        if(step == 0 || step % interval != 0) {
+            return;
+        }
+        if(writing.get()) {
+            skipped++;
+            return;
+        }
+        final Checkpoint checkpoint = Checkpoint.capture(simulator, buffer);
+        buffer = checkpoint.getBuffer();
+        writing.set(true);
+        writer.execute(new Runnable() {
+            public void run()
+            {
+                try {
+                    checkpoint.write(file);
+                    lastWritten = checkpoint.getStep();
+                }
+                catch(IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+                finally {
+                    writing.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The step of the last checkpoint in the file, or -1 if
+     *         none has been written yet.
+     */
+    public int getLastWritten()
+    {
+        return lastWritten;
+    }
+
+    /**
+     * @return The number of checkpoints that were skipped because the
+     *         previous one was still being written.
+     */
+    public int getSkipped()
+    {
+        return skipped;
+    }
+
+    /**
+     * Wait for the checkpoint being written, if any, and stop the writer.
+     * @throws IOException If a checkpoint could not be written.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void close() throws IOException, InterruptedException
+    {
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        IOException e = failure.get();
+        if(e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package Main;
+import java.util.List;
+import java.util.Random;
+
+import Logic.Field;
+import Logic.RandomStream;
+import Logic.Randomizer;
+import Model.Actor;
+import Model.Herds;
+
+/**
+ * Performs a step for a simulator that keeps its animals in an entity
+ * store: the remaining actors (grass and hunters) act first, then every
+ * herd runs its rules as one loop over its arrays.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public class HerdEngine implements StepEngine
+{
+    // Steps the remaining actors.
+    private final SequentialEngine actorEngine;
+    // The herds of the field.
+    private final Herds herds;
+
+    /**
+     * Create an engine for the given herds.
+     * @param herds The herds of the field.
+     */
+    public HerdEngine(Herds herds)
+    {
+        this.herds = herds;
+        actorEngine = new SequentialEngine();
+    }
+
+    /**
+     * Let all actors and herds act once.
+     * @param actors The actors in the field that are not in a herd.
+     * @param field The field the actors live in.
+     * @param random The stream the actors and herds draw from.
+     */
+    public void step(List<Actor> actors, Field field, RandomStream random)
+    {
+        actorEngine.step(actors, field, random);
+        Random previous = Randomizer.setCurrent(random);
+        try {
+            herds.act();
+        }
+        finally {
+            Randomizer.setCurrent(previous);
+        }
+    }
+}
@@ -1,5 +1,23 @@
 package Main;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import Logic.Field;
+import Logic.FieldStorage;
+import Logic.FieldStorageFactory;
+import Logic.MappedFieldStorage;
+import Logic.TiledFieldStorage;
+import Runner.Ensemble;
+import Runner.Sweep;
+import Runner.SweepBenchmark;
+import Runner.SweepRunner;
+
 
 /**
  * Main class to operate simulator.
@@ -9,26 +27,304 @@ package Main;
  */ 
 public class Main
 {
-    private static Simulator simulator;
-
     /**
-     * Main methode
+     * Main methode. Met het argument -headless draait de simulatie zonder
+     * venster voor het gegeven aantal stappen (standaard 4000). Met
+     * -parallel in plaats van -headless worden de stappen over alle
+     * cores verdeeld, met -store worden de dieren in arrays bijgehouden.
+     * Met -sweep stappen seeds resultaten parameter... wordt elke
+     * combinatie van parameterwaarden met het gegeven aantal seeds
+     * gedraaid, zie runSweep. Met -ensemble runs stappen rapport
+     * name=value... worden veel seeds van dezelfde instellingen
+     * gedraaid, zie runEnsemble. Met -virtual na -sweep krijgt elke
+     * run een virtual thread (Java 21 of later), en -sweepbench runs
+     * stappen ms vergelijkt dat met de vaste pool bij een trage uitvoer.
+     * Na het aantal stappen schrijft -checkpoint bestand interval elke
+     * interval stappen een checkpoint, en -resume bestand stappen gaat
+     * verder vanaf een checkpoint, met dezelfde -checkpoint optie. Met
+     * -mapped bestand interval staat het veld in een memory-mapped
+     * bestand, dat elke interval stappen naar schijf wordt geschreven,
+     * en met -tiled krijgt het veld alleen geheugen waar dieren zijn.
+     * Met -torus lopen de randen van het veld rond. Met -size diepte
+     * breedte krijgt een nieuwe run een veld van die grootte, meteen
+     * op de gekozen opslag, en naam=waarde verandert een instelling,
+     * bijvoorbeeld foxCreationProbability=0.001 voor een leeg veld.
      */ 
-    public static void main(String[] args) {
-        setSimulator(new Simulator());
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals("-sweep")) {
+            runSweep(args);
+        }
+        else if(args.length > 0 && args[0].equals("-sweepbench")) {
+            if(args.length < 4) {
+                System.out.println("Usage: -sweepbench runs steps sink-millis");
+                return;
+            }
+            System.out.println(new SweepBenchmark(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                                                  Long.parseLong(args[3])).run());
+        }
+        else if(args.length > 0 && args[0].equals("-ensemble")) {
+            runEnsemble(args);
+        }
+        else if(args.length > 0 && (args[0].equals("-headless") || args[0].equals("-parallel")
+                || args[0].equals("-store"))) {
+            int numSteps = args.length > 1 ? Integer.parseInt(args[1]) : 4000;
+            HeadlessOptions options = HeadlessOptions.parse(args, 2, true);
+            if(options == null) {
+                return;
+            }
+            Simulator simulator = new Simulator(options.depth, options.width, false, options.config,
+                                                options.createStorage(options.depth, options.width));
+            if(args[0].equals("-parallel")) {
+                simulator.setEngine(new ParallelEngine());
+            }
+            else if(args[0].equals("-store")) {
+                simulator.useEntityStore();
+            }
+            runHeadless(simulator, numSteps, options);
+        }
+        else if(args.length > 0 && args[0].equals("-resume")) {
+            if(args.length < 3) {
+                System.out.println("Usage: -resume checkpoint-file steps [-checkpoint file interval]");
+                return;
+            }
+            final HeadlessOptions options = HeadlessOptions.parse(args, 3, false);
+            if(options == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            Simulator simulator = Checkpoint.restore(new File(args[1]), false, new FieldStorageFactory() {
+                public FieldStorage create(int depth, int width) throws IOException {
+                    return options.createStorage(depth, width);
+                }
+            });
+            System.out.println("Restored step " + simulator.getStep() + " in "
+                + (System.nanoTime() - start) / 1e6 + " ms");
+            options.apply(simulator.getConfig());
+            runHeadless(simulator, Integer.parseInt(args[2]), options);
+        }
+        else {
+            new Simulator();
+        }
     }
 
     /**
-     * Getter voor simulator.
+     * The options of a run without a view, read from the command line
+     * before the simulation is made, so its field can be made at its
+     * size and on its storage from the start.
      */ 
-    public static Simulator getSimulator() {
-        return simulator;
+    private static class HeadlessOptions {
+        // The size of the field.
+        int depth = Simulator.DEFAULT_DEPTH;
+        int width = Simulator.DEFAULT_WIDTH;
+        // The settings of a new run, or those to change in a resumed one.
+        final SimulationConfig config = new SimulationConfig();
+        final List<String> settings = new ArrayList<String>();
+        boolean tiled;
+        File mappedFile;
+        int mappedInterval;
+        File checkpointFile;
+        int checkpointInterval;
+        // The mapped storage once it is made.
+        MappedFieldStorage mapped;
+
+        /**
+         * Read the options: -size depth width, -tiled, -mapped file
+         * interval, -checkpoint file interval, -torus and name=value.
+         * @param args The command line arguments.
+         * @param from The first option.
+         * @param newRun false for a resumed run, which takes its size
+         *               from the checkpoint.
+         * @return The options, or null after printing what is wrong.
+         */
+        static HeadlessOptions parse(String[] args, int from, boolean newRun) {
+            HeadlessOptions options = new HeadlessOptions();
+            int i = from;
+            while(i < args.length) {
+                if(args[i].equals("-tiled")) {
+                    options.tiled = true;
+                    i++;
+                }
+                else if(args[i].equals("-torus")) {
+                    options.settings.add("toroidal=1");
+                    i++;
+                }
+                else if(args[i].indexOf('=') > 0) {
+                    options.settings.add(args[i]);
+                    i++;
+                }
+                else if(args[i].equals("-size") && newRun && i + 2 < args.length) {
+                    options.depth = Integer.parseInt(args[i + 1]);
+                    options.width = Integer.parseInt(args[i + 2]);
+                    Field.checkSize(options.depth, options.width);
+                    i += 3;
+                }
+                else if(args[i].equals("-checkpoint") && i + 2 < args.length) {
+                    options.checkpointFile = new File(args[i + 1]);
+                    options.checkpointInterval = Integer.parseInt(args[i + 2]);
+                    i += 3;
+                }
+                else if(args[i].equals("-mapped") && i + 2 < args.length) {
+                    options.mappedFile = new File(args[i + 1]);
+                    options.mappedInterval = Integer.parseInt(args[i + 2]);
+                    i += 3;
+                }
+                else {
+                    System.out.println("Options: " + (newRun ? "-size depth width, " : "")
+                        + "-checkpoint file interval, -mapped file interval, -tiled, -torus, name=value");
+                    return null;
+                }
+            }
+            if(options.tiled && options.mappedFile != null) {
+                System.out.println("Choose -tiled or -mapped, not both");
+                return null;
+            }
+            options.apply(options.config);
+            return options;
+        }
+
+        /**
+         * Apply the name=value settings and -torus to a configuration.
+         * @param config The configuration.
+         */
+        void apply(SimulationConfig config) {
+            for(String setting : settings) {
+                int is = setting.indexOf('=');
+                config.set(setting.substring(0, is), Double.parseDouble(setting.substring(is + 1)));
+            }
+        }
+
+        /**
+         * Make the storage the options ask for.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         * @return The storage, or null for flat storage.
+         */
+        FieldStorage createStorage(int depth, int width) throws IOException {
+            if(tiled) {
+                return new TiledFieldStorage(depth, width);
+            }
+            if(mappedFile != null) {
+                mapped = MappedFieldStorage.create(mappedFile, depth, width);
+                return mapped;
+            }
+            return null;
+        }
     }
 
     /**
-     * Setter voor simulator.
+     * Run a simulation without a view and report its throughput. The
+     * options may ask for checkpoints with -checkpoint file interval,
+     * and with -mapped file interval the field is kept in a memory-mapped
+     * file, of which a snapshot is taken every interval steps.
+     * @param simulator The simulation, without a view.
+     * @param numSteps The number of steps to run for.
+     * @param options The options of the run.
      */ 
-    public static void setSimulator(Simulator simulator) {
-        Main.simulator = simulator;
+    private static void runHeadless(Simulator simulator, int numSteps, HeadlessOptions options)
+            throws IOException, InterruptedException {
+        Checkpointer checkpointer = null;
+        if(options.checkpointFile != null) {
+            checkpointer = new Checkpointer(simulator, options.checkpointFile, options.checkpointInterval);
+            simulator.addListener(checkpointer);
+        }
+        final MappedFieldStorage mapped = options.mapped;
+        if(mapped != null) {
+            final int interval = options.mappedInterval;
+            simulator.addListener(new SimulatorListener() {
+                public void stepPerformed(StepResult result) {
+                    if(result.getStep() % interval == 0) {
+                        mapped.flush(result.getStep());
+                    }
+                }
+            });
+        }
+        int first = simulator.getStep();
+        long start = System.nanoTime();
+        simulator.simulate(numSteps);
+        if(checkpointer != null) {
+            checkpointer.close();
+            System.out.println("Last checkpoint at step " + checkpointer.getLastWritten() + ", "
+                + checkpointer.getSkipped() + " skipped");
+        }
+        if(mapped != null) {
+            mapped.flush(simulator.getStep());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Steps: " + (simulator.getStep() - first) + " in " + seconds + " s ("
+            + (int) ((simulator.getStep() - first) / seconds) + " steps/s)");
+    }
+
+    /**
+     * Run a parameter sweep and write a summary of every run to a file.
+     * The arguments are -sweep, optionally -virtual to run every
+     * run on a virtual thread of its own, the most steps per run, the number of
+     * seeds per configuration, the results file, and any number of
+     * parameters written as name=a,b,c or name=from:to:step, e.g.
+     * foxCreationProbability=0.01:0.05:0.01 rabbit.breedingProbability=0.1,0.2
+     * @param args The command line arguments.
+     */
+    private static void runSweep(String[] args) throws IOException, InterruptedException {
+        boolean virtual = args.length > 1 && args[1].equals("-virtual");
+        if(virtual) {
+            args = java.util.Arrays.copyOfRange(args, 1, args.length);
+        }
+        if(args.length < 4) {
+            System.out.println("Usage: -sweep [-virtual] steps seeds results-file [name=a,b,c | name=from:to:step]...");
+            return;
+        }
+        Sweep sweep = new Sweep();
+        for(int i = 4; i < args.length; i++) {
+            sweep.addParameter(args[i]);
+        }
+        SweepRunner runner = new SweepRunner(sweep, Integer.parseInt(args[2]));
+        runner.setSteps(Integer.parseInt(args[1]));
+        if(virtual && !runner.useVirtualThreads(true)) {
+            System.out.println("No virtual threads on this Java version, using a thread pool.");
+        }
+        Writer results = new BufferedWriter(new FileWriter(args[3]));
+        long start = System.nanoTime();
+        try {
+            runner.run(results);
+        }
+        finally {
+            results.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("Runs: " + runner.getRunsDone() + " in " + seconds + " s, results in " + args[3]);
+    }
+
+    /**
+     * Run an ensemble of seeds of the same settings and write the
+     * statistics per step and species to a file. The arguments are
+     * -ensemble, the number of runs, the steps per run, the report
+     * file, and any number of settings written as name=value, e.g.
+     * foxCreationProbability=0.03
+     * @param args The command line arguments.
+     */
+    private static void runEnsemble(String[] args) throws IOException, InterruptedException {
+        if(args.length < 4) {
+            System.out.println("Usage: -ensemble runs steps report-file [name=value]...");
+            return;
+        }
+        SimulationConfig config = new SimulationConfig();
+        for(int i = 4; i < args.length; i++) {
+            int is = args[i].indexOf('=');
+            if(is <= 0) {
+                throw new IllegalArgumentException("Expected name=value: " + args[i]);
+            }
+            config.set(args[i].substring(0, is), Double.parseDouble(args[i].substring(is + 1)));
+        }
+        Ensemble ensemble = new Ensemble(config, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        long start = System.nanoTime();
+        ensemble.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Writer report = new BufferedWriter(new FileWriter(args[3]));
+        try {
+            ensemble.report(report);
+        }
+        finally {
+            report.close();
+        }
+        System.out.println("Runs: " + args[1] + " in " + seconds + " s, report in " + args[3]);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+package Main;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import Logic.Field;
+import Logic.Location;
+import Logic.RandomStream;
+import Logic.Randomizer;
+import Model.Actor;
+
+/**
+ * Performs a step on several threads by cutting the field into
+ * horizontal stripes of at least two rows.
+ *
+ * An actor only reads and writes the cells next to its own, so while it
+ * acts it touches at most one row above and one row below its stripe.
+ * Two stripes with another stripe between them can therefore never
+ * touch the same cell. The step runs in two phases: first all even
+ * stripes at the same time, then all odd stripes. Each actor acts in
+ * the phase of the stripe it was in at the start of the step, so moves
+ * and births across a stripe border are safe and no actor acts twice.
+ *
+ * On a toroidal field the last stripe lies next to the first one. There
+ * the rows left over are added to the last stripe rather than forming a
+ * thinner one, and if the number of stripes is odd, so that the first
+ * and the last stripe would run in the same phase, the last stripe gets
+ * a third phase of its own.
+ *
+ * Every stripe draws from its own random stream, split from the stream
+ * of the simulation in stripe order before the phases start. The
+ * outcome of a step therefore only depends on the seed and the number
+ * of stripes, which follows from the parallelism of the pool unless a
+ * fixed stripe height is given. With a CounterRandom every stripe gets
+ * a copy with the same keys, so an actor draws the same numbers as in
+ * a sequential step.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class ParallelEngine implements StepEngine
+{
+    // The smallest stripe height for which the phases do not overlap.
+    private static final int MIN_STRIPE_ROWS = 2;
+    // Stripes per worker thread, to even out the work per phase.
+    private static final int STRIPES_PER_THREAD = 4;
+
+    // The pool the stripes run on.
+    private final ForkJoinPool pool;
+    // The fixed stripe height, or 0 to choose it from the parallelism.
+    private final int fixedStripeRows;
+
+    /**
+     * Create an engine that runs on the common ForkJoinPool.
+     */
+    public ParallelEngine()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an engine that runs on the given pool.
+     * @param pool The pool to run the stripes on.
+     */
+    public ParallelEngine(ForkJoinPool pool)
+    {
+        this(pool, 0);
+    }
+
+    /**
+     * Create an engine with a fixed stripe height, so the order in
+     * which actors act does not depend on the number of threads.
+     * @param pool The pool to run the stripes on.
+     * @param stripeRows The rows per stripe; 0 to choose it from the
+     *                   parallelism of the pool. Raised to at least 2.
+     */
+    public ParallelEngine(ForkJoinPool pool, int stripeRows)
+    {
+        if(stripeRows < 0) {
+            throw new IllegalArgumentException("Negative stripe height: " + stripeRows);
+        }
+        this.pool = pool;
+        fixedStripeRows = stripeRows;
+    }
+
+    /**
+     * Let all actors act once, stripe by stripe.
+     * @param actors The actors in the field.
+     * @param field The field the actors live in.
+     * @param random The stream to split the stripe streams from.
+     */
+    public void step(List<Actor> actors, Field field, RandomStream random)
+    {
+        int stripeRows = stripeRows(field.getDepth());
+        boolean toroidal = field.isToroidal();
+        int stripeCount;
+        if(toroidal) {
+            stripeCount = Math.max(1, field.getDepth() / stripeRows);
+        }
+        else {
+            stripeCount = (field.getDepth() + stripeRows - 1) / stripeRows;
+        }
+
+        // Sort the actors into the stripe they start the step in.
+        List<List<Actor>> stripes = new ArrayList<List<Actor>>(stripeCount);
+        List<List<Actor>> newborns = new ArrayList<List<Actor>>(stripeCount);
+        List<RandomStream> streams = new ArrayList<RandomStream>(stripeCount);
+        for(int s = 0; s < stripeCount; s++) {
+            stripes.add(new ArrayList<Actor>());
+            newborns.add(new ArrayList<Actor>());
+            streams.add(random.split());
+        }
+        for(Actor actor : actors) {
+            Location location = actor.getLocation();
+            if(location != null) {
+                stripes.get(Math.min(location.getRow() / stripeRows, stripeCount - 1)).add(actor);
+            }
+        }
+
+        // The stripes that run in the two phases, and the last stripe on
+        // its own if it would touch the first in the same phase.
+        int phased = toroidal && stripeCount % 2 == 1 ? stripeCount - 1 : stripeCount;
+        runPhase(stripes, newborns, streams, field, 0, phased);
+        runPhase(stripes, newborns, streams, field, 1, phased);
+        if(phased < stripeCount) {
+            runPhase(stripes, newborns, streams, field, phased, stripeCount);
+        }
+
+        // Collect the survivors and the newborns, stripe by stripe.
+        actors.clear();
+        for(List<Actor> stripe : stripes) {
+            for(Actor actor : stripe) {
+                if(actor.isAlive()) {
+                    actors.add(actor);
+                }
+            }
+        }
+        for(List<Actor> born : newborns) {
+            for(Actor actor : born) {
+                if(actor.isAlive()) {
+                    actors.add(actor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Let the actors of every other stripe act, all stripes at the
+     * same time, and wait until they are done.
+     * @param stripes The actors per stripe.
+     * @param newborns The lists receiving newborns per stripe.
+     * @param streams The random stream per stripe.
+     * @param field The field the actors live in.
+     * @param first The first stripe of the phase.
+     * @param end The stripe after the last one that may run in the phase.
+     */
+    private void runPhase(List<List<Actor>> stripes, List<List<Actor>> newborns,
+                          List<RandomStream> streams, final Field field, int first, int end)
+    {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(int s = first; s < end; s += 2) {
+            final List<Actor> stripe = stripes.get(s);
+            final List<Actor> born = newborns.get(s);
+            final RandomStream stream = streams.get(s);
+            if(!stripe.isEmpty()) {
+                tasks.add(new Callable<Void>() {
+                    public Void call()
+                    {
+                        Random previous = Randomizer.setCurrent(stream);
+                        try {
+                            for(Actor actor : stripe) {
+                                SequentialEngine.startCell(stream, actor, field);
+                                actor.act(born);
+                            }
+                        }
+                        finally {
+                            Randomizer.setCurrent(previous);
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+        try {
+            for(Future<Void> done : pool.invokeAll(tasks)) {
+                done.get();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Step interrupted", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("Actor failed during step", e.getCause());
+        }
+    }
+
+    /**
+     * Choose the stripe height for a field: the fixed height if one
+     * was given, else enough stripes to keep
+     * every worker busy in both phases, but never fewer rows than
+     * MIN_STRIPE_ROWS.
+     * @param depth The depth of the field.
+     * @return The number of rows per stripe.
+     */
+    private int stripeRows(int depth)
+    {
+        if(fixedStripeRows > 0) {
+            return Math.max(MIN_STRIPE_ROWS, fixedStripeRows);
+        }
+        int wanted = 2 * STRIPES_PER_THREAD * pool.getParallelism();
+        return Math.max(MIN_STRIPE_ROWS, (depth + wanted - 1) / wanted);
+    }
+}
@@ -0,0 +1,88 @@
+package Main;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Logic.Field;
+import Logic.Location;
+import Logic.RandomStream;
+import Logic.Randomizer;
+import Model.Actor;
+
+/**
+ * Performs a step on the calling thread, letting the actors act in
+ * list order.
+ * 
+ * Dead actors are not removed one by one, which would shift the rest
+ * of an ArrayList each time and make a mass die-off quadratic. Instead
+ * the list is compacted once after everyone has acted, keeping the
+ * survivors in their old order.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public class SequentialEngine implements StepEngine
+{
+    /**
+     * Let all actors act once, in list order.
+     * @param actors The actors in the field.
+     * @param field The field the actors live in.
+     * @param random The stream the actors draw from.
+     */
+    public void step(List<Actor> actors, Field field, RandomStream random)
+    {
+        // Provide space for newborn actors.
+        List<Actor> newactors = new ArrayList<Actor>();        
+        // Let all actors act.
+        Random previous = Randomizer.setCurrent(random);
+        try {
+            int size = actors.size();
+            for(int i = 0; i < size; i++) {
+                Actor actor = actors.get(i);
+                startCell(random, actor, field);
+                actor.act(newactors);
+            }
+        }
+        finally {
+            Randomizer.setCurrent(previous);
+        }
+               
+        // Add the newly born foxes and rabbits to the main lists.
+        actors.addAll(newactors);
+        removeDead(actors);
+    }
+
+    /**
+     * Tell the random stream which cell the actor starts in, so a
+     * counter-based stream can key the draws of the actor by it.
+     * @param random The stream the actor draws from.
+     * @param actor The actor about to act.
+     * @param field The field the actor lives in.
+     */
+    static void startCell(RandomStream random, Actor actor, Field field)
+    {
+        Location location = actor.getLocation();
+        random.startCell(location != null ? field.indexOf(location) : -1);
+    }
+
+    /**
+     * Remove the dead actors in a single pass: every survivor is moved
+     * down over the dead ones before it, then the tail is cut off.
+     * @param actors The actors; must support fast get and set.
+     */
+    static void removeDead(List<Actor> actors)
+    {
+        int size = actors.size();
+        int kept = 0;
+        for(int i = 0; i < size; i++) {
+            Actor actor = actors.get(i);
+            if(actor.isAlive()) {
+                if(kept != i) {
+                    actors.set(kept, actor);
+                }
+                kept++;
+            }
+        }
+        actors.subList(kept, size).clear();
+    }
+}
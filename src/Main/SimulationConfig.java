@@ -0,0 +1,297 @@
+package Main;
+
+import Logic.Species;
+import Model.AllesEter;
+import Model.Bear;
+import Model.Fox;
+import Model.Grass;
+import Model.Rabbit;
+import Model.SpeciesConfig;
+
+/**
+ * The settings of one simulation: how likely each species is to be
+ * placed in a cell when the field is populated, the animation speed,
+ * and the rules of every species. A Simulator hands the rules on to the
+ * actors and herds it creates, so every simulation in the process can
+ * have its own settings.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class SimulationConfig
+{
+    // The default probabilities that a species is created in any given grid position.
+    private static final double FOX_CREATION_PROBABILITY = 0.017;
+    private static final double RABBIT_CREATION_PROBABILITY = 0.09;
+    private static final double BEAR_CREATION_PROBABILITY = 0.02;
+    private static final double HUNTER_CREATION_PROBABILITY = 0.05;
+    private static final double GRASS_CREATION_PROBABILITY = 0.007;
+    private static final double ALLESETER_CREATION_PROBABILITY = 0.01;
+    // The default animation speed, in milliseconds per step.
+    private static final int ANIMATION_SPEED = 100;
+
+    private volatile double foxCreationProbability;
+    private volatile double rabbitCreationProbability;
+    private volatile double bearCreationProbability;
+    private volatile double hunterCreationProbability;
+    private volatile double grassCreationProbability;
+    private volatile double allesEterCreationProbability;
+    private volatile int animationSpeed;
+    // Whether the edges of the field wrap around.
+    private volatile boolean toroidal;
+    // The rules per species code, null for species without rules.
+    private final SpeciesConfig[] species;
+
+    /**
+     * Create the default settings.
+     */
+    public SimulationConfig()
+    {
+        species = new SpeciesConfig[Species.COUNT];
+        species[Species.RABBIT] = Rabbit.createConfig();
+        species[Species.FOX] = Fox.createConfig();
+        species[Species.BEAR] = Bear.createConfig();
+        species[Species.GRASS] = Grass.createConfig();
+        species[Species.ALLESETER] = AllesEter.createConfig();
+        // Alleseters give birth to bears.
+        species[Species.ALLESETER].setYoung(species[Species.BEAR]);
+        setDefault();
+    }
+
+    /**
+     * Return the rules of a species.
+     * @param code The species code.
+     * @return The rules, or null if the species has none (e.g. hunters).
+     */
+    public SpeciesConfig getSpecies(byte code)
+    {
+        return species[code];
+    }
+
+    /**
+     * @return The probability that a fox is created in a cell.
+     */
+    public double getFoxCreationProbability()
+    {
+        return foxCreationProbability;
+    }
+
+    /**
+     * setter voor fox_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setFoxCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            foxCreationProbability = probability;
+    }
+
+    /**
+     * @return The probability that a rabbit is created in a cell.
+     */
+    public double getRabbitCreationProbability()
+    {
+        return rabbitCreationProbability;
+    }
+
+    /**
+     * setter voor rabbit_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setRabbitCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            rabbitCreationProbability = probability;
+    }
+
+    /**
+     * @return The probability that a bear is created in a cell.
+     */
+    public double getBearCreationProbability()
+    {
+        return bearCreationProbability;
+    }
+
+    /**
+     * setter voor bear_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setBearCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            bearCreationProbability = probability;
+    }
+
+    /**
+     * @return The probability that a hunter is created in a cell.
+     */
+    public double getHunterCreationProbability()
+    {
+        return hunterCreationProbability;
+    }
+
+    /**
+     * setter voor hunter_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setHunterCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            hunterCreationProbability = probability;
+    }
+
+    /**
+     * @return The probability that grass is created in a cell.
+     */
+    public double getGrassCreationProbability()
+    {
+        return grassCreationProbability;
+    }
+
+    /**
+     * setter voor grass_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setGrassCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            grassCreationProbability = probability;
+    }
+
+    /**
+     * @return The probability that an alleseter is created in a cell.
+     */
+    public double getAllesEterCreationProbability()
+    {
+        return allesEterCreationProbability;
+    }
+
+    /**
+     * setter voor alleseter_creation_probability
+     * @param probability The new probability; ignored if negative.
+     */
+    public void setAllesEterCreationProbability(double probability)
+    {
+        if (probability >= 0)
+            allesEterCreationProbability = probability;
+    }
+
+    /**
+     * getter voor animationSpeed
+     * @return The time between two animated steps, in milliseconds.
+     */
+    public int getAnimationSpeed()
+    {
+        return animationSpeed;
+    }
+
+    /**
+     * setter voor animationSpeed
+     * @param animationSpeed The new speed; ignored outside 0 to 1000.
+     */
+    public void setAnimationSpeed(int animationSpeed)
+    {
+        if (animationSpeed >= 0 && animationSpeed <= 1000)
+            this.animationSpeed = animationSpeed;
+    }
+
+    /**
+     * @return true if the edges of the field wrap around, so animals
+     *         near an edge see and move to the cells on the opposite one.
+     */
+    public boolean isToroidal()
+    {
+        return toroidal;
+    }
+
+    /**
+     * Choose the topology of the field. The simulator applies it at the
+     * start of the next step.
+     * @param toroidal true to let the edges wrap around, false for a
+     *                 bounded field.
+     */
+    public void setToroidal(boolean toroidal)
+    {
+        this.toroidal = toroidal;
+    }
+
+    /**
+     * Change a setting by name, e.g. for a parameter sweep. The names
+     * are those of the setters without "set" and with a lower case
+     * first letter, such as foxCreationProbability; the rules of a
+     * species are named after it, such as fox.breedingAge. Whole
+     * numbers are rounded. As with the setters, a value out of range
+     * is ignored. Toroidal is on for any value but 0.
+     * @param name The name of the setting.
+     * @param value The new value.
+     * @throws IllegalArgumentException If there is no such setting.
+     */
+    public void set(String name, double value)
+    {
+        int dot = name.indexOf('.');
+        if (dot >= 0)
+        {
+            SpeciesConfig rules = speciesNamed(name.substring(0, dot));
+            String rule = name.substring(dot + 1);
+            if (rules != null && rule.equals("breedingAge"))
+                rules.setBreedingAge((int) Math.round(value));
+            else if (rules != null && rule.equals("maxAge"))
+                rules.setMaxAge((int) Math.round(value));
+            else if (rules != null && rule.equals("breedingProbability"))
+                rules.setBreedingProbability(value);
+            else if (rules != null && rule.equals("maxLitterSize"))
+                rules.setMaxLitterSize((int) Math.round(value));
+            else
+                throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+        else if (name.equals("foxCreationProbability"))
+            setFoxCreationProbability(value);
+        else if (name.equals("rabbitCreationProbability"))
+            setRabbitCreationProbability(value);
+        else if (name.equals("bearCreationProbability"))
+            setBearCreationProbability(value);
+        else if (name.equals("hunterCreationProbability"))
+            setHunterCreationProbability(value);
+        else if (name.equals("grassCreationProbability"))
+            setGrassCreationProbability(value);
+        else if (name.equals("allesEterCreationProbability"))
+            setAllesEterCreationProbability(value);
+        else if (name.equals("animationSpeed"))
+            setAnimationSpeed((int) Math.round(value));
+        else if (name.equals("toroidal"))
+            setToroidal(value != 0);
+        else
+            throw new IllegalArgumentException("Unknown setting: " + name);
+    }
+
+    /**
+     * Find the rules of a species by its name, ignoring case.
+     * @param name The name of the species, e.g. fox.
+     * @return The rules, or null if there is no such species with rules.
+     */
+    private SpeciesConfig speciesNamed(String name)
+    {
+        for (byte code = 0; code < Species.COUNT; code++)
+        {
+            if (Species.getName(code).equalsIgnoreCase(name))
+                return species[code];
+        }
+        return null;
+    }
+
+    /**
+     * default settings of the simulation itself; the rules of the
+     * species each have their own setDefault.
+     */
+    public void setDefault()
+    {
+        animationSpeed = ANIMATION_SPEED;
+        foxCreationProbability = FOX_CREATION_PROBABILITY;
+        rabbitCreationProbability = RABBIT_CREATION_PROBABILITY;
+        bearCreationProbability = BEAR_CREATION_PROBABILITY;
+        hunterCreationProbability = HUNTER_CREATION_PROBABILITY;
+        grassCreationProbability = GRASS_CREATION_PROBABILITY;
+        allesEterCreationProbability = ALLESETER_CREATION_PROBABILITY;
+        toroidal = false;
+    }
+}
@@ -1,13 +1,18 @@
 package Main;
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.awt.Color;
 
 import Logic.Field;
+import Logic.FieldStorage;
+import Logic.CounterRandom;
 import Logic.Location;
+import Logic.RandomStream;
 import Logic.Randomizer;
+import Logic.Species;
 import Model.Actor;
 import Model.Bear;
 import Model.Fox;
@@ -15,12 +20,17 @@ import Model.Hunter;
 import Model.Rabbit;
 import Model.Grass;
 import Model.AllesEter;
+import Model.Herds;
 import View.SimulatorView;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
  * containing rabbits and foxes.
  * 
+ * The simulator does not need a window: it reports each step to its
+ * SimulatorListeners, and the Swing SimulatorView is just one of them.
+ * A headless simulator has no view at all.
+ * 
  * @author Caroline
  * @version 1.0
  */
@@ -28,21 +38,9 @@ public class Simulator
 {
     // Constants representing configuration information for the simulation.
     // The default width for the grid.
-    private static final int DEFAULT_WIDTH = 120;
+    public static final int DEFAULT_WIDTH = 120;
     // The default depth of the grid.
-    private static final int DEFAULT_DEPTH = 80;
-    // The probability that a fox will be created in any given grid position.
-    private static double FOX_CREATION_PROBABILITY = 0.017;
-    // The probability that a rabbit will be created in any given grid position.
-    private static double RABBIT_CREATION_PROBABILITY = 0.09;   
-    // The probability that a bear will be created in any given grid position.
-    private static double BEAR_CREATION_PROBABILITY = 0.02;
-    // The probability that a hunter will be created in any given grid position.
-    private static double HUNTER_CREATION_PROBABILITY = 0.05;
-    // The probability that grass will be created in any given grid position.
-    private static double GRASS_CREATION_PROBABILITY = 0.007;  
-    // The probability that alleseter will be created in any given grid position.
-    private static double ALLESETER_CREATION_PROBABILITY = 0.01;
+    public static final int DEFAULT_DEPTH = 80;
 
     // List of actors in the field.
     private List<Actor> actors;
@@ -50,10 +48,22 @@ public class Simulator
     private Field field;
     // The current step of the simulation.
     private int step;
-    // A graphical view of the simulation.
-    private SimulatorView view;;
-    //	animation speed of the thread
-    private static int animationSpeed = 100;
+    // A graphical view of the simulation, null when headless.
+    private SimulatorView view;
+    // The listeners that are told about every step.
+    private List<SimulatorListener> listeners;
+    // The strategy that performs a step.
+    private StepEngine engine;
+    // The entity store for the animals, null if they are actor objects.
+    private Herds herds;
+    // The master seed; every reset starts the random stream from it.
+    private long seed;
+    // The random stream of this simulation.
+    private RandomStream random;
+    // Whether the stream is counter-based, keyed by step and cell.
+    private boolean counterRandom;
+    // The settings of this simulation.
+    private final SimulationConfig config;
     
     /**
      * Construct a simulation field with default size.
@@ -63,6 +73,16 @@ public class Simulator
         this(DEFAULT_DEPTH, DEFAULT_WIDTH);
     }
     
+    /**
+     * Construct a simulation field with default size, with or without
+     * a graphical view.
+     * @param withView true to show the simulation, false to run headless.
+     */
+    public Simulator(boolean withView)
+    {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH, withView);
+    }
+    
     /**
      * Create a simulation field with the given size.
      * @param depth Depth of the field. Must be greater than zero.
@@ -70,27 +90,118 @@ public class Simulator
      */
     public Simulator(int depth, int width)
     {
-        if(width <= 0 || depth <= 0) {
+        this(depth, width, true);
+    }
+    
+    /**
+     * Create a simulation field with the given size, with or without
+     * a graphical view.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param withView true to show the simulation in a SimulatorView,
+     *                 false to run headless.
+     */
+    public Simulator(int depth, int width, boolean withView)
+    {
+        this(depth, width, withView, new SimulationConfig());
+    }
+    
+    /**
+     * Create a simulation field with the given size and settings. Every
+     * simulator keeps its own state, so several of them can run side by
+     * side in one process, each on its own thread.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param withView true to show the simulation in a SimulatorView,
+     *                 false to run headless.
+     * @param config The settings of this simulation.
+     * @throws IllegalArgumentException If the field would have more than
+     *         Field.MAX_CELLS cells.
+     */
+    public Simulator(int depth, int width, boolean withView, SimulationConfig config)
+    {
+        this(depth, width, withView, config, null, true);
+    }
+    
+    /**
+     * Create a simulation field with the given size and settings, started
+     * from the given master seed. The field is populated once, with that
+     * seed, as when setSeed is called on a new simulator but without first
+     * populating it from the default seed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param withView true to show the simulation in a SimulatorView,
+     *                 false to run headless.
+     * @param config The settings of this simulation.
+     * @param seed The master seed.
+     */
+    public Simulator(int depth, int width, boolean withView, SimulationConfig config, long seed)
+    {
+        this(depth, width, withView, config, null, false);
+        setSeed(seed);
+    }
+    
+    /**
+     * Create a simulation on a field that keeps its cells in the given
+     * storage, e.g. a TiledFieldStorage for a large field that is mostly
+     * empty or a MappedFieldStorage for one larger than the heap. The
+     * field is made on that storage, so no cell is ever kept elsewhere.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param withView true to show the simulation in a SimulatorView,
+     *                 false to run headless.
+     * @param config The settings of this simulation.
+     * @param storage Empty storage for depth * width cells.
+     */
+    public Simulator(int depth, int width, boolean withView, SimulationConfig config, FieldStorage storage)
+    {
+        this(depth, width, withView, config, storage, true);
+    }
+    
+    /**
+     * Create a simulation field with the given size and settings.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param withView true to show the simulation in a SimulatorView,
+     *                 false to run headless.
+     * @param config The settings of this simulation.
+     * @param storage Storage for the cells, or null for flat storage.
+     * @param populate true to start from a populated field, false to
+     *                 leave it empty for a checkpoint to restore.
+     */
+    Simulator(int depth, int width, boolean withView, SimulationConfig config, FieldStorage storage,
+              boolean populate)
+    {
+        if((width <= 0 || depth <= 0) && storage == null) {
             System.out.println("The dimensions must be greater than zero.");
             System.out.println("Using default values.");
             depth = DEFAULT_DEPTH;
             width = DEFAULT_WIDTH;
         }
         
+        this.config = config;
         actors = new ArrayList<Actor>();
-        field = new Field(depth, width);
+        field = storage != null ? new Field(depth, width, storage) : new Field(depth, width);
+        listeners = new ArrayList<SimulatorListener>();
+        engine = new SequentialEngine();
+        seed = Randomizer.getDefaultSeed();
 
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width);
-        view.setColor(Rabbit.class, Color.orange);
-        view.setColor(Fox.class, Color.blue);
-        view.setColor(Bear.class, Color.GRAY);
-        view.setColor(Hunter.class, Color.CYAN);
-        view.setColor(Grass.class, Color.GREEN);
-        view.setColor(AllesEter.class, Color.RED);
+        if(withView) {
+            // Create a view of the state of each location in the field.
+            view = new SimulatorView(this, depth, width);
+            view.setColor(Rabbit.class, Color.orange);
+            view.setColor(Fox.class, Color.blue);
+            view.setColor(Bear.class, Color.GRAY);
+            view.setColor(Hunter.class, Color.CYAN);
+            view.setColor(Grass.class, Color.GREEN);
+            view.setColor(AllesEter.class, Color.RED);
+            addListener(view);
+        }
         
-        // Setup a valid starting point.
-        reset();
+        if(populate) {
+            // Setup a valid starting point.
+            reset();
+        }
     }
     
     /**
@@ -109,7 +220,7 @@ public class Simulator
      */
     public void simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
+        for(int step = 1; step <= numSteps && isViable(); step++) {
             simulateOneStep();
         }
     }
@@ -117,27 +228,15 @@ public class Simulator
     /**
      * Run the simulation from its current state for a single step.
      * Iterate over the whole field updating the state of each
-     * fox and rabbit.
+     * fox and rabbit. The topology of the settings is applied first.
      */
     public void simulateOneStep()
     {
         step++;
-
-        // Provide space for newborn actors.
-        List<Actor> newactors = new ArrayList<Actor>();        
-        // Let all actors act.
-        for(Iterator<Actor> it = actors.iterator(); it.hasNext(); ) {
-            Actor animal = it.next();
-            animal.act(newactors);
-            if(! animal.isAlive()) {
-                it.remove();
-            }
-        }
-               
-        // Add the newly born foxes and rabbits to the main lists.
-        actors.addAll(newactors);
-
-        view.showStatus(step, field);
+        random.startStep(step);
+        field.setToroidal(config.isToroidal());
+        engine.step(actors, field, random);
+        fireStepPerformed();
     }
         
     /**
@@ -147,79 +246,214 @@ public class Simulator
     {
         step = 0;
         actors.clear();
+        if(counterRandom) {
+            random = new CounterRandom(seed);
+        }
+        else {
+            random = Randomizer.newStream(seed);
+        }
         populate();
         
-        // Show the starting state in the view.
-        view.showStatus(step, field);
+        // Show the starting state to the listeners.
+        fireStepPerformed();
     }
     
     /**
-     * Getter voor view
-     * @return view van het type SimulatorView
+     * Determine whether the simulation is still viable, i.e. whether
+     * more than one species is alive. This uses the population counters
+     * of the field and does not need a view.
+     * @return true If there is more than one species alive.
      */
-    public SimulatorView getSimulatorView()
+    public boolean isViable()
     {
-    	return view;
+        int nonZero = 0;
+        for(byte species = 1; species < Species.COUNT; species++) {
+            if(field.getCount(species) > 0) {
+                nonZero++;
+            }
+        }
+        return nonZero > 1;
     }
     
     /**
-     * setter voor bear_creation_probability
-     * @param bear_creation_probability
+     * Set the master seed and reset the simulation. A run is the same
+     * for the same seed, engine and number of threads.
+     * @param seed The new master seed.
      */
-    public static void setBearCreationProbability(double bear_creation_probability)
+    public void setSeed(long seed)
     {
-    	if (bear_creation_probability >= 0)
-    		Simulator.BEAR_CREATION_PROBABILITY = bear_creation_probability;
-    }   
+        this.seed = seed;
+        reset();
+    }
+    
+    /**
+     * @return The master seed of the simulation.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+    
+    /**
+     * Choose between a plain random stream and a counter-based one,
+     * and reset the simulation. With a counter-based stream every
+     * random decision of an actor is a hash of (seed, step, cell,
+     * draw), so it does not depend on the engine or the thread count.
+     * @param counterRandom true for a CounterRandom.
+     */
+    public void useCounterRandom(boolean counterRandom)
+    {
+        this.counterRandom = counterRandom;
+        reset();
+    }
+    
+    /**
+     * Choose how steps are performed, e.g. a ParallelEngine to spread
+     * the actors over several threads.
+     * @param engine The engine to use from the next step on.
+     */
+    public void setEngine(StepEngine engine)
+    {
+        this.engine = engine;
+        if(herds != null) {
+            herds = null;
+            reset();
+        }
+    }
     
     /**
-     * setter voor fox_creation_probability
-     * @param fox_creation_probability
+     * Keep the animals in an entity store of primitive arrays instead
+     * of one object per animal, and reset the simulation. Grass and
+     * hunters remain actor objects. The store runs on its own engine,
+     * so a later setEngine call turns it off again.
      */
-    public static void setFoxCreationProbability(double fox_creation_probability)
+    public void useEntityStore()
     {
-    	if (fox_creation_probability >= 0)
-    		Simulator.FOX_CREATION_PROBABILITY = fox_creation_probability;
+        herds = new Herds(field, config.getSpecies(Species.RABBIT), config.getSpecies(Species.FOX),
+                          config.getSpecies(Species.BEAR), config.getSpecies(Species.ALLESETER));
+        engine = new HerdEngine(herds);
+        reset();
+    }
+    
+    /**
+     * Write the state of the simulation to a checkpoint file, from
+     * which Checkpoint.restore can start it again. Call this between
+     * steps, on the thread that runs the simulation.
+     * @param file The file to write; it is replaced as a whole.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveCheckpoint(File file) throws IOException
+    {
+        Checkpoint.capture(this).write(file);
+    }
+    
+    /**
+     * Take over the step and random state of a checkpoint, and the
+     * entity store if it had one. The actors and herds are restored
+     * by the checkpoint afterwards.
+     * @param step The step of the checkpoint.
+     * @param seed The master seed.
+     * @param counterRandom Whether the stream is counter-based.
+     * @param randomState The state of the stream.
+     * @param entityStore Whether the animals are kept in an entity store.
+     */
+    void restore(int step, long seed, boolean counterRandom, long randomState, boolean entityStore)
+    {
+        this.step = step;
+        this.seed = seed;
+        this.counterRandom = counterRandom;
+        if(counterRandom) {
+            random = new CounterRandom(seed);
+            random.startStep(step);
+        }
+        else {
+            random = Randomizer.newStream(seed);
+        }
+        random.setSeed(randomState);
+        actors.clear();
+        field.clear();
+        field.setToroidal(config.isToroidal());
+        if(entityStore) {
+            herds = new Herds(field, config.getSpecies(Species.RABBIT), config.getSpecies(Species.FOX),
+                              config.getSpecies(Species.BEAR), config.getSpecies(Species.ALLESETER));
+            engine = new HerdEngine(herds);
+        }
+    }
+    
+    /**
+     * Show the restored state to the listeners.
+     */
+    void restored()
+    {
+        fireStepPerformed();
+    }
+    
+    /**
+     * @return The actors of the simulation; not a copy.
+     */
+    List<Actor> getActors()
+    {
+        return actors;
     }
     
     /**
-     * setter voor rabbit_creation_probability
-     * @param rabbit_creation_probability
+     * @return The entity store, or null if the animals are actor objects.
      */
-    public static void setRabbitCreationProbability(double rabbit_creation_probability)
+    Herds getHerds()
     {
-    	if (rabbit_creation_probability >= 0)
-    		Simulator.RABBIT_CREATION_PROBABILITY = rabbit_creation_probability;
+        return herds;
     }
     
     /**
-     * setter voor hunter_creation_probability
-     * @param hunter_creation_probability
+     * @return The random stream of the simulation.
      */
-    public static void setHunterCreationProbability(double hunter_creation_probability)
+    RandomStream getRandom()
     {
-    	if (hunter_creation_probability >= 0)
-    		Simulator.HUNTER_CREATION_PROBABILITY = hunter_creation_probability;
+        return random;
     }
     
     /**
-     * setter voor grass_creation_probability
-     * @param grass_creation_probability
+     * @return true if the random stream is counter-based.
      */
-    public static void setGrassCreationProbability(double grass_creation_probability)
+    boolean isCounterRandom()
     {
-    	if (grass_creation_probability >= 0)
-    		Simulator.GRASS_CREATION_PROBABILITY = grass_creation_probability;
-    }    
+        return counterRandom;
+    }
     
     /**
-     * setter voor alleseter_creation_probability
-     * @param alleseter_creation_probability
+     * Register a listener to be told about every step.
+     * @param listener The listener to add.
      */
-    public static void setAllesEterCreationProbability(double alleseter_creation_probability)
+    public void addListener(SimulatorListener listener)
     {
-    	if (alleseter_creation_probability >= 0)
-    		Simulator.ALLESETER_CREATION_PROBABILITY = alleseter_creation_probability;
+        listeners.add(listener);
+    }
+    
+    /**
+     * Stop telling a listener about steps.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(SimulatorListener listener)
+    {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Return the current step of the simulation.
+     * @return The number of steps performed since the last reset.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+    
+    /**
+     * Getter voor view
+     * @return view van het type SimulatorView, of null als de simulator headless is
+     */
+    public SimulatorView getSimulatorView()
+    {
+    	return view;
     }   
     
     /**
@@ -232,35 +466,34 @@ public class Simulator
     }
     
     /**
-     * getter voor animationSpeed()
-     * @return animationSpeed of the thread
+     * Getter voor config
+     * @return the settings of this simulation
      */
-    public int getAnimationSpeed()
+    public SimulationConfig getConfig()
     {
-    	return animationSpeed;
+    	return config;
     }
     
     /**
-     * setter voor animationSpeed
-     * @param animationSpeed
+     * getter voor animationSpeed()
+     * @return animationSpeed of the thread
      */
-    public static void setAnimationSpeed(int animationSpeed)
+    public int getAnimationSpeed()
     {
-    	if (animationSpeed >= 0 && animationSpeed <= 1000)
-    		Simulator.animationSpeed = animationSpeed;
+    	return config.getAnimationSpeed();
     }
     
     /**
-     * default settings
+     * Tell all listeners about the step that was just performed.
      */
-    public static void setDefault()
+    private void fireStepPerformed()
     {
-    	animationSpeed = 100;
-        FOX_CREATION_PROBABILITY = 0.02;
-        RABBIT_CREATION_PROBABILITY = 0.09;   
-        BEAR_CREATION_PROBABILITY = 0.02;
-        HUNTER_CREATION_PROBABILITY = 0.05;
-        GRASS_CREATION_PROBABILITY = 0.01;  
+        if(!listeners.isEmpty()) {
+            StepResult result = new StepResult(step, field);
+            for(SimulatorListener listener : listeners) {
+                listener.stepPerformed(result);
+            }
+        }
     }
         
     /**
@@ -268,42 +501,78 @@ public class Simulator
      */
     private void populate()
     {
-        Random rand = Randomizer.getRandom();
+        Random previous = Randomizer.setCurrent(random);
+        try {
+            populateField();
+        }
+        finally {
+            Randomizer.setCurrent(previous);
+        }
+    }
+    
+    /**
+     * Fill the field, drawing from the current random generator.
+     */
+    private void populateField()
+    {
+        Random rand = Randomizer.current();
         field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= FOX_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Fox fox = new Fox(true, field, location);
-                    actors.add(fox);
-                }
-                else if(rand.nextDouble() <= RABBIT_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Rabbit rabbit = new Rabbit(true, field, location);
-                    actors.add(rabbit);
-                }
-                else if(rand.nextDouble() <= BEAR_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Bear bear = new Bear(true, field, location);
-                    actors.add(bear);
-                }
-                else if(rand.nextDouble() <= HUNTER_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Hunter hunter = new Hunter(field, location);
-                    actors.add(hunter);
-                }
-                else if(rand.nextDouble() <= GRASS_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Grass grass = new Grass(true, field, location);
-                    actors.add(grass);
-                }               
-                else if(rand.nextDouble() <= ALLESETER_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    AllesEter alleseter = new AllesEter(true, field, location);
-                    actors.add(alleseter);
-                 //else leave the location empty.
+        if(herds != null) {
+            herds.clear();
+        }
+        int cells = field.getDepth() * field.getWidth();
+        for(int cell = 0; cell < cells; cell++) {
+            random.startCell(cell);
+            if(rand.nextDouble() <= config.getFoxCreationProbability()) {
+                spawnAnimal(Species.FOX, cell);
+            }
+            else if(rand.nextDouble() <= config.getRabbitCreationProbability()) {
+                spawnAnimal(Species.RABBIT, cell);
             }
+            else if(rand.nextDouble() <= config.getBearCreationProbability()) {
+                spawnAnimal(Species.BEAR, cell);
             }
+            else if(rand.nextDouble() <= config.getHunterCreationProbability()) {
+                Hunter hunter = new Hunter(field, field.locationOf(cell));
+                actors.add(hunter);
+            }
+            else if(rand.nextDouble() <= config.getGrassCreationProbability()) {
+                Grass grass = new Grass(true, field, field.locationOf(cell), config.getSpecies(Species.GRASS));
+                actors.add(grass);
+            }
+            else if(rand.nextDouble() <= config.getAllesEterCreationProbability()) {
+                spawnAnimal(Species.ALLESETER, cell);
+            }
+            //else leave the location empty.
+        }
+    }
+    
+    /**
+     * Create an animal with a random age, either as an actor object
+     * or in the entity store.
+     * @param species The species code of the animal.
+     * @param cell The cell to place it in.
+     */
+    private void spawnAnimal(byte species, int cell)
+    {
+        if(herds != null) {
+            herds.spawn(species, cell, true);
+            return;
+        }
+        Location location = field.locationOf(cell);
+        Actor animal;
+        if(species == Species.FOX) {
+            animal = new Fox(true, field, location, config.getSpecies(Species.FOX));
+        }
+        else if(species == Species.RABBIT) {
+            animal = new Rabbit(true, field, location, config.getSpecies(Species.RABBIT));
+        }
+        else if(species == Species.BEAR) {
+            animal = new Bear(true, field, location, config.getSpecies(Species.BEAR));
+        }
+        else {
+            animal = new AllesEter(true, field, location, config.getSpecies(Species.ALLESETER));
         }
+        actors.add(animal);
     }
 }
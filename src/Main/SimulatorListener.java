@@ -0,0 +1,18 @@
+package Main;
+
+/**
+ * Something that wants to hear about the progress of a simulation,
+ * e.g. a graphical view or a statistics collector. Listeners are told
+ * about every step, including the starting state after a reset.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public interface SimulatorListener
+{
+    /**
+     * Called after the simulator has performed a step.
+     * @param result The outcome of the step.
+     */
+    void stepPerformed(StepResult result);
+}
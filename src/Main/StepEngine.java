@@ -0,0 +1,35 @@
+package Main;
+import java.util.List;
+
+import Logic.Field;
+import Logic.RandomStream;
+import Model.Actor;
+
+/**
+ * A strategy for performing one simulation step: letting every actor
+ * act once and collecting the survivors and the newborns.
+ * 
+ * After a step the actor list holds the survivors, in the order in
+ * which they acted, followed by the newborns of the step in the order
+ * in which they were born. Every actor that died during the step,
+ * whether of age, hunger or by being eaten, is gone from the list.
+ * 
+ * The actors draw their random numbers from Randomizer.current(). An
+ * engine makes the given stream current while the actors act, or
+ * splits it in a fixed order when several threads act at once, so a
+ * step only depends on the stream and not on thread scheduling.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public interface StepEngine
+{
+    /**
+     * Let all actors act once.
+     * @param actors The actors in the field. On return it holds the
+     *               surviving actors followed by the newborns.
+     * @param field The field the actors live in.
+     * @param random The random stream of the simulation.
+     */
+    void step(List<Actor> actors, Field field, RandomStream random);
+}
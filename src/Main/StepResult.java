@@ -0,0 +1,64 @@
+package Main;
+
+import Logic.Field;
+import Logic.Species;
+
+/**
+ * The outcome of one simulation step: the step number, the population
+ * of every species and the field the step was performed on.
+ * 
+ * @author Caroline
+ * @version 1.0
+ */
+public class StepResult
+{
+    // The step that was performed, 0 for the starting state.
+    private final int step;
+    // The population per species code.
+    private final int[] counts;
+    // The field after the step.
+    private final Field field;
+
+    /**
+     * Record the outcome of a step.
+     * @param step The step number.
+     * @param field The field after the step.
+     */
+    public StepResult(int step, Field field)
+    {
+        this.step = step;
+        this.field = field;
+        counts = new int[Species.COUNT];
+        for(byte species = 1; species < Species.COUNT; species++) {
+            counts[species] = field.getCount(species);
+        }
+    }
+
+    /**
+     * @return The step number.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @param species A species code.
+     * @return The population of that species after the step.
+     */
+    public int getCount(byte species)
+    {
+        return counts[species];
+    }
+
+    /**
+     * Return the field after the step. This is the live field of the
+     * simulator; a listener that keeps it beyond the call must copy
+     * what it needs.
+     * @return The field.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+}
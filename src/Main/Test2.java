@@ -1,5 +1,35 @@
 package Main;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import Logic.Field;
+import Logic.MappedFieldStorage;
+import Logic.Species;
+import Runner.Ensemble;
+import Runner.Frame;
+import Runner.FrameBuffer;
+import Runner.QuantileEstimator;
+import Runner.RunSummary;
+import Runner.RunningStats;
+import Runner.StepStats;
+import Runner.Sweep;
+import Runner.SweepRunner;
+import Runner.ThreadRunner;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -55,4 +85,492 @@ public class Test2 {
         Simulator sim = new Simulator();
         sim.reset();
     }
+
+    /**
+     * Test that a simulator without a view runs and reports its steps.
+     */
+    @Test
+    public void simulateHeadless() {
+        System.out.println("simulateHeadless");
+        Simulator sim = new Simulator(false);
+        final int[] lastStep = { -1 };
+        sim.addListener(new SimulatorListener() {
+            public void stepPerformed(StepResult result) {
+                lastStep[0] = result.getStep();
+            }
+        });
+        sim.simulate(10);
+        assertNull(sim.getSimulatorView());
+        assertEquals(sim.getStep(), lastStep[0]);
+    }
+
+    /**
+     * Test that two parallel runs with the same seed and the same
+     * number of threads give exactly the same populations.
+     */
+    @Test
+    public void sameSeedSameRun() {
+        System.out.println("sameSeedSameRun");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(populations(new ParallelEngine(pool), 42, false),
+                         populations(new ParallelEngine(pool), 42, false));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that with a counter-based random source a parallel engine
+     * takes the same decisions as a sequential run in which the actors
+     * act in the same order. In a single stripe that is the sequential
+     * engine. With many stripes it is the same stripes and phases run
+     * one by one on a single thread, and any number of threads must give
+     * the same run, on a bounded and on a toroidal field, with an even
+     * and an odd number of stripes.
+     */
+    @Test
+    public void counterRandomMatchesSequential() {
+        System.out.println("counterRandomMatchesSequential");
+        ForkJoinPool one = new ForkJoinPool(1);
+        try {
+            assertEquals(populations(new SequentialEngine(), 7, true),
+                         populations(new ParallelEngine(one, 80), 7, true));
+            for(int mode = 0; mode < 2; mode++) {
+                SimulationConfig config = new SimulationConfig();
+                config.setToroidal(mode == 1);
+                // 80 rows: 26 or 27 stripes of 3 rows, 13 or 14 of 6.
+                for(int stripeRows : new int[] { 3, 6 }) {
+                    List<Integer> sequential =
+                        populations(new ParallelEngine(one, stripeRows), 7, true, config);
+                    for(int threads : new int[] { 2, 4, 8 }) {
+                        ForkJoinPool pool = new ForkJoinPool(threads);
+                        try {
+                            assertEquals("toroidal " + (mode == 1) + ", " + stripeRows + " rows, " + threads + " threads",
+                                         sequential, populations(new ParallelEngine(pool, stripeRows), 7, true, config));
+                        }
+                        finally {
+                            pool.shutdown();
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            one.shutdown();
+        }
+    }
+
+    /**
+     * Test that simulations running side by side on their own threads
+     * do not share state: each gives the same run as when it runs alone,
+     * also when one of them has different settings.
+     */
+    @Test
+    public void simulatorsSideBySide() throws Exception {
+        System.out.println("simulatorsSideBySide");
+        final SimulationConfig changed = new SimulationConfig();
+        changed.setFoxCreationProbability(0.05);
+        changed.getSpecies(Species.RABBIT).setBreedingProbability(0.2);
+        List<Integer> alone = populations(new SequentialEngine(), 11, false);
+        List<Integer> changedAlone = populations(new SequentialEngine(), 11, false, changed);
+        assertFalse(alone.equals(changedAlone));
+
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<List<Integer>>> runs =
+                new ArrayList<Future<List<Integer>>>();
+            for(int i = 0; i < 3; i++) {
+                final SimulationConfig config = i == 1 ? changed : new SimulationConfig();
+                runs.add(threads.submit(new Callable<List<Integer>>() {
+                    public List<Integer> call() {
+                        return populations(new SequentialEngine(), 11, false, config);
+                    }
+                }));
+            }
+            assertEquals(alone, runs.get(0).get());
+            assertEquals(changedAlone, runs.get(1).get());
+            assertEquals(alone, runs.get(2).get());
+        }
+        finally {
+            threads.shutdown();
+        }
+    }
+
+    /**
+     * Test that a sweep writes one summary per configuration and seed,
+     * and that a run of the sweep gives the same summary on its own.
+     */
+    @Test
+    public void sweep() throws Exception {
+        System.out.println("sweep");
+        Sweep sweep = new Sweep();
+        sweep.addParameter("foxCreationProbability=0.01,0.05");
+        sweep.addParameter("rabbit.maxLitterSize=2:6:2");
+        assertEquals(6, sweep.size());
+        assertEquals("foxCreationProbability=0.05;rabbit.maxLitterSize=4.0", sweep.describe(4));
+        SweepRunner runner = new SweepRunner(sweep, 2);
+        runner.setSteps(20);
+        runner.setFieldSize(30, 40);
+        runner.setThreads(2);
+        StringWriter results = new StringWriter();
+        assertEquals(12, runner.run(results));
+
+        String[] lines = results.toString().split("\n");
+        assertEquals(13, lines.length);
+        assertEquals(RunSummary.header(), lines[0]);
+        Set<String> expected = new HashSet<String>();
+        for(int run = 0; run < 12; run++) {
+            expected.add(runner.runOne(run).toString());
+        }
+        assertEquals(expected, new HashSet<String>(Arrays.asList(lines).subList(1, 13)));
+    }
+
+    /**
+     * Test that the statistics of an ensemble match the runs it is made
+     * of, run one by one.
+     */
+    @Test
+    public void ensemble() throws Exception {
+        System.out.println("ensemble");
+        SimulationConfig config = new SimulationConfig();
+        Ensemble ensemble = new Ensemble(config, 6, 20);
+        ensemble.setFieldSize(30, 40);
+        ensemble.setThreads(3);
+        ensemble.setBaseSeed(100);
+        ensemble.setInterval(8);
+        ensemble.run();
+        assertNull(ensemble.getStepStats(4));
+
+        RunningStats rabbits = new RunningStats();
+        int foxesGone = 0;
+        for(long seed = 100; seed < 106; seed++) {
+            Simulator sim = new Simulator(30, 40, false, config);
+            sim.setSeed(seed);
+            for(int step = 0; step < 20; step++) {
+                sim.simulateOneStep();
+            }
+            rabbits.add(sim.getField().getCount(Species.RABBIT));
+            if(sim.getField().getCount(Species.FOX) == 0) {
+                foxesGone++;
+            }
+        }
+        StepStats last = ensemble.getStepStats(20);
+        assertEquals(6, last.getRuns());
+        assertEquals(rabbits.getMean(), last.getPopulation(Species.RABBIT).getMean(), 1e-9);
+        assertEquals(rabbits.getVariance(), last.getPopulation(Species.RABBIT).getVariance(), 1e-6);
+        assertEquals(foxesGone / 6.0, last.getExtinctionProbability(Species.FOX), 1e-9);
+        double[] interval = last.getMeanInterval(Species.RABBIT);
+        assertTrue(interval[0] <= rabbits.getMean() && rabbits.getMean() <= interval[1]);
+    }
+
+    /**
+     * Test the quantile estimate against the exact quantiles of a
+     * shuffled series.
+     */
+    @Test
+    public void quantileEstimator() {
+        System.out.println("quantileEstimator");
+        List<Integer> values = new ArrayList<Integer>();
+        for(int i = 0; i < 10000; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(1));
+        QuantileEstimator median = new QuantileEstimator(0.5);
+        QuantileEstimator high = new QuantileEstimator(0.95);
+        for(int value : values) {
+            median.add(value);
+            high.add(value);
+        }
+        assertEquals(5000, median.getQuantile(), 100);
+        assertEquals(9500, high.getQuantile(), 100);
+    }
+
+    /**
+     * Test that a simulation restored from a checkpoint file goes on
+     * exactly as the saved one, with actor objects and with the entity
+     * store and a counter-based random source.
+     */
+    @Test
+    public void checkpointRestore() throws Exception {
+        System.out.println("checkpointRestore");
+        for(int mode = 0; mode < 2; mode++) {
+            Simulator sim = new Simulator(80, 120, false, new SimulationConfig());
+            sim.getConfig().getSpecies(Species.FOX).setMaxAge(120);
+            if(mode == 1) {
+                sim.useEntityStore();
+                sim.useCounterRandom(true);
+            }
+            sim.setSeed(5);
+            sim.simulate(15);
+            File file = File.createTempFile("checkpoint", ".vkcp");
+            try {
+                sim.saveCheckpoint(file);
+                Simulator restored = Checkpoint.restore(file, false);
+                assertEquals(sim.getStep(), restored.getStep());
+                assertEquals(120, restored.getConfig().getSpecies(Species.FOX).getMaxAge());
+                for(int step = 0; step < 15; step++) {
+                    sim.simulateOneStep();
+                    restored.simulateOneStep();
+                }
+                for(byte species = 1; species < Species.COUNT; species++) {
+                    assertEquals(sim.getField().getCount(species), restored.getField().getCount(species));
+                }
+                assertSameCells(sim.getField(), restored.getField());
+            }
+            finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Test that herd animals older than a short can hold still die of
+     * old age: with a maximum age of 40000 when the field is populated
+     * and 1 after that, the animals must all die in the first step.
+     */
+    @Test
+    public void herdAgesBeyondShort() {
+        System.out.println("herdAgesBeyondShort");
+        SimulationConfig config = new SimulationConfig();
+        config.setFoxCreationProbability(0);
+        config.setBearCreationProbability(0);
+        config.setHunterCreationProbability(0);
+        config.setGrassCreationProbability(0);
+        config.setAllesEterCreationProbability(0);
+        config.getSpecies(Species.RABBIT).setMaxAge(40000);
+        config.getSpecies(Species.RABBIT).setBreedingProbability(0);
+        Simulator sim = new Simulator(80, 120, false, config);
+        sim.useEntityStore();
+        sim.setSeed(3);
+        assertTrue(sim.getField().getCount(Species.RABBIT) > 500);
+        config.getSpecies(Species.RABBIT).setMaxAge(1);
+        sim.simulateOneStep();
+        assertEquals(0, sim.getField().getCount(Species.RABBIT));
+    }
+
+    /**
+     * Test that a frame taken after several unseen steps lists every
+     * cell that changed since the previous take, each cell once, so
+     * applying only those changes gives the field as it is now.
+     */
+    @Test
+    public void frameBufferMergesSkippedSteps() {
+        System.out.println("frameBufferMergesSkippedSteps");
+        Simulator sim = new Simulator(false);
+        Field field = sim.getField();
+        FrameBuffer frames = new FrameBuffer(field.getDepth(), field.getWidth());
+        byte[] shown = new byte[field.getDepth() * field.getWidth()];
+        assertNull(frames.take(null));
+        frames.publish(sim.getStep(), field, "");
+        Frame frame = frames.take(null);
+        apply(frame, shown);
+        assertNull(frames.take(frame));
+        for(int step = 0; step < 3; step++) {
+            sim.simulateOneStep();
+            frames.publish(sim.getStep(), field, "");
+        }
+        assertSame(frame, frames.take(frame));
+        assertEquals(sim.getStep(), frame.getStep());
+        boolean[] seen = new boolean[shown.length];
+        for(int i = 0; i < frame.getChangedCount(); i++) {
+            assertFalse(seen[frame.getChangedCell(i)]);
+            seen[frame.getChangedCell(i)] = true;
+        }
+        apply(frame, shown);
+        for(int cell = 0; cell < shown.length; cell++) {
+            assertEquals(field.getSpeciesAt(cell), shown[cell]);
+        }
+    }
+
+    /**
+     * Test that a step that throws stops the run of a thread runner,
+     * instead of leaving it running without stepping.
+     */
+    @Test
+    public void failingStepStopsRun() throws InterruptedException {
+        System.out.println("failingStepStopsRun");
+        Simulator sim = new Simulator(false);
+        sim.addListener(new SimulatorListener() {
+            public void stepPerformed(StepResult result) {
+                throw new IllegalStateException("step " + result.getStep());
+            }
+        });
+        ThreadRunner runner = new ThreadRunner(sim);
+        try {
+            runner.runSteps(5);
+            long end = System.currentTimeMillis() + 10000;
+            while(runner.getFailure() == null && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(runner.getFailure() instanceof IllegalStateException);
+            assertFalse(runner.isRunning());
+            assertEquals(0, runner.getStepsDone());
+        }
+        finally {
+            runner.shutdown();
+        }
+    }
+
+    /**
+     * Test that a simulation made on a memory-mapped field runs as one
+     * on flat storage, and that a snapshot of the file holds its cells.
+     */
+    @Test
+    public void mappedFieldFromTheStart() throws IOException {
+        System.out.println("mappedFieldFromTheStart");
+        File file = File.createTempFile("field", ".vkfs");
+        try {
+            MappedFieldStorage storage = MappedFieldStorage.create(file, 60, 90);
+            Simulator mapped = new Simulator(60, 90, false, new SimulationConfig(), storage);
+            Simulator flat = new Simulator(60, 90, false, new SimulationConfig());
+            assertSame(storage, mapped.getField().getStorage());
+            mapped.setSeed(5);
+            flat.setSeed(5);
+            mapped.simulate(20);
+            flat.simulate(20);
+            storage.flush(mapped.getStep());
+            MappedFieldStorage snapshot = MappedFieldStorage.open(file, true);
+            assertEquals(mapped.getStep(), snapshot.getStep());
+            assertSameCells(flat.getField(), new Field(60, 90, snapshot));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a damaged checkpoint file, with a cut-off end or a wrong
+     * number somewhere, is either restored or refused with an
+     * IOException, with actor objects and with the entity store.
+     */
+    @Test
+    public void damagedCheckpoint() throws IOException {
+        System.out.println("damagedCheckpoint");
+        Random rand = new Random(6);
+        File file = File.createTempFile("checkpoint", ".vkcp");
+        try {
+            for(int mode = 0; mode < 2; mode++) {
+                Simulator sim = new Simulator(30, 40, false, new SimulationConfig());
+                if(mode == 1) {
+                    sim.useEntityStore();
+                }
+                sim.setSeed(2);
+                sim.simulate(5);
+                sim.saveCheckpoint(file);
+                byte[] saved = Files.readAllBytes(file.toPath());
+                for(int i = 0; i < 300; i++) {
+                    byte[] damaged;
+                    if(i % 10 == 0) {
+                        damaged = Arrays.copyOf(saved, rand.nextInt(saved.length));
+                    }
+                    else {
+                        damaged = saved.clone();
+                        int at = rand.nextInt(saved.length - 4);
+                        int value = rand.nextBoolean() ? rand.nextInt() : rand.nextInt(3) - 1;
+                        for(int b = 0; b < 4; b++) {
+                            damaged[at + b] = (byte) (value >>> (24 - 8 * b));
+                        }
+                    }
+                    Files.write(file.toPath(), damaged);
+                    try {
+                        Checkpoint.restore(file, false);
+                    }
+                    catch(IOException e) {
+                        // expected for most damage
+                    }
+                }
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a checkpoint taken in memory, restored and run for more
+     * steps next to the saved run writes the same file as that run after
+     * the same steps, so nothing of the state is lost in the round trip.
+     */
+    @Test
+    public void checkpointRoundTrip() throws IOException {
+        System.out.println("checkpointRoundTrip");
+        Simulator sim = new Simulator(60, 90, false, new SimulationConfig());
+        sim.setSeed(9);
+        sim.simulate(10);
+        Simulator restored = Checkpoint.capture(sim).restore(false);
+        sim.simulate(25);
+        restored.simulate(25);
+        assertEquals(sim.getStep(), restored.getStep());
+        File first = File.createTempFile("checkpoint", ".vkcp");
+        File second = File.createTempFile("checkpoint", ".vkcp");
+        try {
+            sim.saveCheckpoint(first);
+            restored.saveCheckpoint(second);
+            assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+        }
+        finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    /**
+     * Check that two fields hold the same species in every cell.
+     */
+    private void assertSameCells(Field expected, Field actual) {
+        assertEquals(expected.getDepth(), actual.getDepth());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        for(int cell = 0; cell < expected.getDepth() * expected.getWidth(); cell++) {
+            assertEquals("cell " + cell, expected.getSpeciesAt(cell), actual.getSpeciesAt(cell));
+        }
+    }
+
+    /**
+     * Write the changed cells of a frame into an array of species.
+     */
+    private void apply(Frame frame, byte[] shown) {
+        for(int i = 0; i < frame.getChangedCount(); i++) {
+            shown[frame.getChangedCell(i)] = frame.getChangedSpecies(i);
+        }
+    }
+
+    /**
+     * Run a headless simulation with the default settings and record
+     * its populations.
+     * @param engine The engine to step with.
+     * @param seed The master seed.
+     * @param counterRandom Whether to use a counter-based random source.
+     * @return The count of every species after every step.
+     */
+    private List<Integer> populations(StepEngine engine, long seed, boolean counterRandom) {
+        return populations(engine, seed, counterRandom, new SimulationConfig());
+    }
+
+    /**
+     * Run a headless simulation and record its populations.
+     * @param engine The engine to step with.
+     * @param seed The master seed.
+     * @param counterRandom Whether to use a counter-based random source.
+     * @param config The settings of the simulation.
+     * @return The count of every species after every step.
+     */
+    private List<Integer> populations(StepEngine engine, long seed, boolean counterRandom,
+                                                SimulationConfig config) {
+        Simulator sim = new Simulator(80, 120, false, config);
+        sim.setEngine(engine);
+        sim.useCounterRandom(counterRandom);
+        sim.setSeed(seed);
+        final List<Integer> counts = new ArrayList<Integer>();
+        sim.addListener(new SimulatorListener() {
+            public void stepPerformed(StepResult result) {
+                for(byte species = 1; species < Species.COUNT; species++) {
+                    counts.add(result.getCount(species));
+                }
+            }
+        });
+        sim.simulate(30);
+        return counts;
+    }
 }
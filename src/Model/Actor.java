@@ -1,6 +1,9 @@
 package Model;
 import java.util.List;
 
+import Logic.Location;
+import Logic.Occupant;
+
 /**
  * De interface Actor
  * 
@@ -8,7 +11,7 @@ import java.util.List;
  * @version 1.0
  */
 
-public interface Actor {
+public interface Actor extends Occupant {
 	
     /**
      * Make this actor act - that is: make it do
@@ -23,4 +26,10 @@ public interface Actor {
      */
 	boolean isAlive();
 	
+	/**
+	 * Return the actor's location.
+	 * @return The location, or null if the actor has left the field.
+	 */
+	Location getLocation();
+	
 }
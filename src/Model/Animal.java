@@ -20,15 +20,21 @@ public abstract class Animal implements Actor
     private Field field;
     // The animal's position in the field.
     private Location location;
+    // The entity id given by the field, 0 if none.
+    private int occupantId;
+    // The rules of the species in this simulation.
+    private final SpeciesConfig config;
     
     /**
      * Create a new animal at location in field.
      * 
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param config The rules of the species in the simulation.
      */
-    public Animal(Field field, Location location)
+    public Animal(Field field, Location location, SpeciesConfig config)
     {
+        this.config = config;
     	age = 0;
         alive = true;
         this.field = field;
@@ -60,10 +66,28 @@ public abstract class Animal implements Actor
         alive = false;
         if(location != null) {
             field.clear(location);
+            field.release(this);
             location = null;
             field = null;
         }
     }
+
+    /**
+     * @return The entity id given by the field, or 0 if it has none.
+     */
+    public int getOccupantId()
+    {
+        return occupantId;
+    }
+
+    /**
+     * Remember the entity id given by the field.
+     * @param id The entity id.
+     */
+    public void setOccupantId(int id)
+    {
+        occupantId = id;
+    }
     
     /**
      * Return the animal's age.
@@ -87,7 +111,7 @@ public abstract class Animal implements Actor
      * Return the animal's location.
      * @return The animal's location.
      */
-    protected Location getLocation()
+    public Location getLocation()
     {
         return location;
     }
@@ -105,6 +129,32 @@ public abstract class Animal implements Actor
         field.place(this, newLocation);
     }
     
+    /**
+     * Return the index of the animal's cell in the field.
+     * @return The cell index.
+     */
+    protected int getCell()
+    {
+        return field.indexOf(location);
+    }
+
+    /**
+     * Move the animal to the cell with the given index.
+     * @param cell The new cell index.
+     */
+    protected void setCell(int cell)
+    {
+        setLocation(field.locationOf(cell));
+    }
+
+    /**
+     * @return The rules of the species in the simulation.
+     */
+    protected SpeciesConfig getConfig()
+    {
+        return config;
+    }
+
     /**
      * Return the animal's field.
      * @return The animal's field.
@@ -118,6 +168,17 @@ public abstract class Animal implements Actor
      * @return The age at which an animal starts to breed
      */   
     protected abstract int getBreedingAge();
+
+    /**
+     * @return The food level of the animal.
+     */
+    abstract int getFoodLevel();
+
+    /**
+     * Set the food level of the animal, e.g. when restoring a checkpoint.
+     * @param foodLevel The food level.
+     */
+    abstract void setFoodLevel(int foodLevel);
     
     /**
      * A rabbit can breed if it has reached the breeding age.
@@ -1,10 +1,11 @@
 package Model;
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 import Logic.Field;
 import Logic.Location;
+import Logic.Neighbourhood;
+import Logic.Species;
 import Logic.Randomizer;
 
 /**
@@ -17,21 +18,19 @@ import Logic.Randomizer;
 
 public class Bear extends Animal
 {
-    // Characteristics shared by all bears (static fields).
+    // The default characteristics of bears; see createConfig.
     
     // The age at which a bear can start to breed.
-    private static int BREEDING_AGE = 12;
+    private static final int BREEDING_AGE = 12;
     // The age to which a bear can live.
-    private static int MAX_AGE = 300;
+    private static final int MAX_AGE = 300;
     // The likelihood of a bear breeding.
-    private static double BREEDING_PROBABILITY = 0.040;
+    private static final double BREEDING_PROBABILITY = 0.040;
     // The maximum number of births.
-    private static int MAX_LITTER_SIZE = 2;
+    private static final int MAX_LITTER_SIZE = 2;
     // The food value of a single rabbit or fox. In effect, this is the
     // number of steps a fox can go before it has to eat again.
     private static final int FOX_FOOD_VALUE = 20;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
     
     // Individual characteristics (instance fields).
     // The bear's food level, which is increased by eating rabbits.
@@ -41,12 +40,14 @@ public class Bear extends Animal
      * Create a bear. A bear can be created as a new born (age zero
      * and not hungry) or with random age.
      * @param randomAge If true, the bear will have random age and hunger level.
+     * @param config The rules of this species in the simulation.
      */
-    public Bear(boolean randomAge, Field field, Location location)
+    public Bear(boolean randomAge, Field field, Location location, SpeciesConfig config)
     {
-        super(field, location);
+        super(field, location, config);
         if(randomAge) {
-            setAge(rand.nextInt(MAX_AGE));
+            Random rand = Randomizer.current();
+            setAge(rand.nextInt(getMaxAge()));
             foodLevel = rand.nextInt(FOX_FOOD_VALUE);
         }
         else {
@@ -67,16 +68,18 @@ public class Bear extends Animal
         incrementAge();
         incrementHunger();
         if(isAlive()) {
-            giveBirth(newBears);            
+            // One look around serves breeding, feeding and moving.
+            Neighbourhood around = getField().adjacentCells(getCell());
+            giveBirth(newBears, around);            
             // Move towards a source of food if found.
-            Location newLocation = findFood();
-            if(newLocation == null) { 
+            int newCell = findFood(around);
+            if(newCell < 0) { 
                 // No food found - try to move to a free location.
-                newLocation = getField().freeAdjacentLocation(getLocation());
+                newCell = around.takeFree(Species.BEAR);
             }
             // See if it was possible to move.
-            if(newLocation != null) {
-                setLocation(newLocation);
+            if(newCell >= 0) {
+                setCell(newCell);
             }
             else {
                 // Overcrowding.
@@ -89,17 +92,21 @@ public class Bear extends Animal
      * Check whether or not this bear is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newBears A list to return newly born rabbits.
+     * @param around The neighbourhood of this bear.
      */
-    private void giveBirth(List<Actor> newBears)
+    private void giveBirth(List<Actor> newBears, Neighbourhood around)
     {
             // New bears are born into adjacent locations.
-            // Get a list of adjacent free locations.
+            // Take free cells from the neighbourhood snapshot.
             Field field = getField();
-            List<Location> free = field.getFreeAdjacentLocations(getLocation());
             int births = breed();
-            for(int b = 0; b < births && free.size() > 0; b++) {
-                Location loc = free.remove(0);
-                Bear young = new Bear(false, field, loc);
+            for(int b = 0; b < births; b++) {
+                int cell = around.takeFree(Species.BEAR);
+                if(cell < 0) {
+                    break;
+                }
+                Location loc = field.locationOf(cell);
+                Bear young = new Bear(false, field, loc, getConfig().getYoung());
                 newBears.add(young);
             }
      }        
@@ -118,27 +125,26 @@ public class Bear extends Animal
     /**
      * Look for rabbits and foxes adjacent to the current location.
      * Only the first live rabbit/fox is eaten.
-     * @return Where food was found, or null if it wasn't.
+     * @param around The neighbourhood of this bear.
+     * @return The cell where food was found, or -1 if it wasn't.
      */
-    private Location findFood()
+    private int findFood(Neighbourhood around)
     {
         Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Fox) {
-                Fox fox = (Fox) animal;
+        for(int i = 0; i < around.size(); i++) {
+            int where = around.get(i);
+            if(around.getSpecies(i) == Species.FOX) {
+                Fox fox = (Fox) field.getObjectAt(where);
                 if(fox.isAlive()) { 
                     fox.setDead();
                     foodLevel = FOX_FOOD_VALUE;
+                    around.setSpecies(i, Species.BEAR);
                     // Remove the dead fox from the field.
                     return where;
                 }
             }
         }
-        return null;
+        return -1;
     }    
     
     /**
@@ -149,69 +155,49 @@ public class Bear extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        Random rand = Randomizer.current();
+        if(canBreed() && rand.nextDouble() <= getConfig().getBreedingProbability()) {
+            births = rand.nextInt(getConfig().getMaxLitterSize()) + 1;
         }
         return births;
-    }  
+    }
+    
     
     /**
-     * @return The age at which a fox starts to breed
+     * @return The age at which a bear starts to breed
      */    
-    public static void setBreedingAge(int breeding_age)
+    protected int getBreedingAge() 
     {
-    	if (breeding_age >= 0)
-    		breeding_age = breeding_age;
+            return getConfig().getBreedingAge();
     }
-    
+            
     /**
-     * setter voor max_age
-     * @param max_age
+     * Create the default rules for bears, for one simulation.
+     * @return A new configuration with the default values.
      */
-    public static void setMaxAge(int max_age)
+    public static SpeciesConfig createConfig()
     {
-    	if (max_age >= 1)
-    		max_age = max_age;
+        return new SpeciesConfig(BREEDING_AGE, MAX_AGE, BREEDING_PROBABILITY, MAX_LITTER_SIZE, FOX_FOOD_VALUE);
     }
-    
+
     /**
-     * setter voor breeding_probability
-     * @param breeding_probability
+     * Create an empty herd of bears that follows the same rules,
+     * for the entity store.
+     * @param field The field the herd lives in.
+     * @param config The rules of the species.
+     * @return The new herd.
      */
-    public static void setBreedingProbability(double breeding_probability)
+    static Herd createHerd(Field field, SpeciesConfig config)
     {
-    	if (breeding_probability >= 0)
-    		breeding_probability = breeding_probability;
+        return new Herd(Species.BEAR, Bear.class, field, config, 1 << Species.FOX);
     }
-    
-    /**
-     * setter voor max_litter_size
-     * @param max_litter_size
-     */
-    public static void setMaxLitterSize(int max_litter_size)
-    {
-    	if (max_litter_size >= 1)
-    		max_litter_size = max_litter_size;
-    }  
-    
+
     /**
-     * default settings
+     * @return The species code of a bear.
      */
-    public static void setDefault()
-    {
-    	BREEDING_AGE = 12;
-    	MAX_AGE = 300;
-    	BREEDING_PROBABILITY = 0.04;
-    	MAX_LITTER_SIZE = 2;
-    }
-    
-    
-    /**
-     * @return The age at which a bear starts to breed
-     */    
-    protected int getBreedingAge() 
+    public byte getSpecies()
     {
-            return BREEDING_AGE;
+        return Species.BEAR;
     }
             
     /**
@@ -219,7 +205,7 @@ public class Bear extends Animal
      */       
     protected int getMaxAge()
     {
-            return MAX_AGE;
+            return getConfig().getMaxAge();
     }
     
     /**
@@ -227,7 +213,7 @@ public class Bear extends Animal
      */   
     protected double getBreedingProbability() 
     {
-        return BREEDING_PROBABILITY;
+        return getConfig().getBreedingProbability();
     }
     
     /**
@@ -235,7 +221,23 @@ public class Bear extends Animal
      */
     protected int getMaxLitterSize()
     {
-        return MAX_LITTER_SIZE;
+        return getConfig().getMaxLitterSize();
     }
         
+    /**
+     * @return The food level of the bear.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Set the food level of the bear, e.g. when restoring a checkpoint.
+     * @param foodLevel The food level.
+     */
+    void setFoodLevel(int foodLevel)
+    {
+        this.foodLevel = foodLevel;
+    }
 }
@@ -0,0 +1,240 @@
+package Model;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import Logic.Field;
+import Logic.Location;
+import Logic.Species;
+
+/**
+ * Writes the actors and herds of a simulation into a checkpoint and
+ * reads them back. This lives in the model because it needs the age
+ * and food level of every animal, which the model keeps to itself.
+ *
+ * An actor is written as its species code, its cell (-1 if it has no
+ * location), its age, its food level and whether it is alive; that is
+ * ACTOR_BYTES bytes. A herd is written as its species code and size,
+ * followed by the cell, age and food level of every animal, that is
+ * HERD_ANIMAL_BYTES bytes per animal. Everything is read back without
+ * drawing random numbers, so a restored simulation goes on exactly as
+ * the saved one would have. Data that cannot have been written, such
+ * as a cell outside the field or an unknown species, is refused with an
+ * IOException.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public final class Checkpoints
+{
+    // The bytes written per actor.
+    public static final int ACTOR_BYTES = 14;
+    // The bytes written per herd animal.
+    public static final int HERD_ANIMAL_BYTES = 12;
+
+    /**
+     * No instances.
+     */
+    private Checkpoints()
+    {
+    }
+
+    /**
+     * Write one actor.
+     * @param actor The actor.
+     * @param field The field the simulation runs in.
+     * @param out Where the actor goes.
+     */
+    public static void writeActor(Actor actor, Field field, ByteBuffer out)
+    {
+        int age, food;
+        if(actor instanceof Animal) {
+            age = ((Animal) actor).getAge();
+            food = ((Animal) actor).getFoodLevel();
+        }
+        else if(actor instanceof Plant) {
+            age = ((Plant) actor).getAge();
+            food = ((Plant) actor).getFoodLevel();
+        }
+        else if(actor instanceof Hunter) {
+            age = 0;
+            food = 0;
+        }
+        else {
+            throw new IllegalStateException("Cannot write a " + actor.getClass().getName() + " to a checkpoint");
+        }
+        Location location = actor.getLocation();
+        out.put(actor.getSpecies());
+        out.putInt(location != null ? field.indexOf(location) : -1);
+        out.putInt(age);
+        out.putInt(food);
+        out.put((byte) (actor.isAlive() ? 1 : 0));
+    }
+
+    /**
+     * Read one actor and, if it has a location, place it in the field.
+     * @param in Where the actor is read from.
+     * @param field The field of the restored simulation.
+     * @param configs The rules of every species, by species code.
+     * @return The actor.
+     * @throws IOException If the data does not describe an actor of
+     *         the field.
+     */
+    public static Actor readActor(ByteBuffer in, Field field, SpeciesConfig[] configs) throws IOException
+    {
+        byte species = in.get();
+        int cell = in.getInt();
+        int age = in.getInt();
+        int food = in.getInt();
+        boolean alive = in.get() != 0;
+        checkSpecies(species);
+        if(cell != -1) {
+            checkCell(cell, field);
+        }
+        Location location = cell >= 0 ? field.locationOf(cell) : null;
+        if(species == Species.HUNTER) {
+            // A hunter is not placed and is never alive, see Simulator.populate.
+            return new Hunter(field, location);
+        }
+        if(location == null || !alive) {
+            throw new IOException("A " + Species.getName(species) + " in a checkpoint has no place in the field");
+        }
+        if(species == Species.GRASS) {
+            Grass grass = new Grass(false, field, location, configs[species]);
+            grass.setAge(age);
+            grass.setFoodLevel(food);
+            return grass;
+        }
+        Animal animal;
+        if(species == Species.RABBIT) {
+            animal = new Rabbit(false, field, location, configs[species]);
+        }
+        else if(species == Species.FOX) {
+            animal = new Fox(false, field, location, configs[species]);
+        }
+        else if(species == Species.BEAR) {
+            animal = new Bear(false, field, location, configs[species]);
+        }
+        else if(species == Species.ALLESETER) {
+            animal = new AllesEter(false, field, location, configs[species]);
+        }
+        else {
+            throw new IOException("Unknown species in checkpoint: " + species);
+        }
+        animal.setAge(age);
+        animal.setFoodLevel(food);
+        return animal;
+    }
+
+    /**
+     * @param herds The herds of a simulation, compacted.
+     * @return The number of bytes writeHerds writes for them.
+     */
+    public static int herdsBytes(Herds herds)
+    {
+        int bytes = 1;
+        for(byte species = 0; species < Species.COUNT; species++) {
+            Herd herd = herds.getHerd(species);
+            if(herd != null) {
+                bytes += 5 + herd.getSize() * HERD_ANIMAL_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Write all herds. The herds must be compacted, as they are between
+     * two steps.
+     * @param herds The herds.
+     * @param out Where the herds go.
+     */
+    public static void writeHerds(Herds herds, ByteBuffer out)
+    {
+        int count = 0;
+        for(byte species = 0; species < Species.COUNT; species++) {
+            if(herds.getHerd(species) != null) {
+                count++;
+            }
+        }
+        out.put((byte) count);
+        for(byte species = 0; species < Species.COUNT; species++) {
+            Herd herd = herds.getHerd(species);
+            if(herd == null) {
+                continue;
+            }
+            out.put(species);
+            out.putInt(herd.getSize());
+            for(int i = 0; i < herd.getSize(); i++) {
+                if(herd.getCell(i) < 0) {
+                    throw new IllegalStateException("The herds must be compacted before a checkpoint");
+                }
+                out.putInt(herd.getCell(i));
+                out.putInt(herd.getAge(i));
+                out.putInt(herd.getFoodLevel(i));
+            }
+        }
+    }
+
+    /**
+     * Read all herds and place their animals in the field, in the slots
+     * they had when they were written.
+     * @param herds Empty herds of the restored simulation.
+     * @param in Where the herds are read from.
+     * @param narrow true if the age and food level of an animal were
+     *               written as shorts, as in older checkpoints.
+     * @param field The field of the restored simulation.
+     * @throws IOException If the data does not describe herds of the
+     *         field.
+     */
+    public static void readHerds(Herds herds, ByteBuffer in, boolean narrow, Field field) throws IOException
+    {
+        herds.clear();
+        int count = in.get();
+        int animalBytes = narrow ? 8 : HERD_ANIMAL_BYTES;
+        for(int h = 0; h < count; h++) {
+            byte species = in.get();
+            int size = in.getInt();
+            checkSpecies(species);
+            Herd herd = herds.getHerd(species);
+            if(herd == null) {
+                throw new IOException("No herd for " + Species.getName(species) + " in checkpoint");
+            }
+            if(size < 0 || size > in.remaining() / animalBytes) {
+                throw new IOException("Invalid size of the " + Species.getName(species) + " herd in checkpoint: "
+                                      + size);
+            }
+            for(int i = 0; i < size; i++) {
+                int cell = in.getInt();
+                int age = narrow ? in.getShort() : in.getInt();
+                int food = narrow ? in.getShort() : in.getInt();
+                checkCell(cell, field);
+                herd.add(cell, age, food);
+            }
+        }
+    }
+
+    /**
+     * Check a species code read from a checkpoint.
+     * @param species The species code.
+     * @throws IOException If it is not the code of a species.
+     */
+    private static void checkSpecies(byte species) throws IOException
+    {
+        if(species <= Species.EMPTY || species >= Species.COUNT) {
+            throw new IOException("Unknown species in checkpoint: " + species);
+        }
+    }
+
+    /**
+     * Check a cell index read from a checkpoint.
+     * @param cell The cell index.
+     * @param field The field of the restored simulation.
+     * @throws IOException If the cell is outside the field.
+     */
+    private static void checkCell(int cell, Field field) throws IOException
+    {
+        if(cell < 0 || cell >= field.getDepth() * field.getWidth()) {
+            throw new IOException("Cell " + cell + " in checkpoint is outside the "
+                                  + field.getDepth() + "x" + field.getWidth() + " field");
+        }
+    }
+}
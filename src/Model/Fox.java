@@ -1,10 +1,11 @@
 package Model;
 import java.util.List;
-import java.util.Iterator;
 import java.util.Random;
 
 import Logic.Field;
 import Logic.Location;
+import Logic.Neighbourhood;
+import Logic.Species;
 import Logic.Randomizer;
 
 /**
@@ -16,21 +17,19 @@ import Logic.Randomizer;
  */
 public class Fox extends Animal
 {
-    // Characteristics shared by all foxes (class variables).
+    // The default characteristics of foxes; see createConfig.
     
     // The age at which a fox can start to breed.
-    private static int BREEDING_AGE = 3;
+    private static final int BREEDING_AGE = 3;
     // The age to which a fox can live.
-    private static int MAX_AGE = 150;
+    private static final int MAX_AGE = 150;
     // The likelihood of a fox breeding.
-    private static double BREEDING_PROBABILITY = 0.035;
+    private static final double BREEDING_PROBABILITY = 0.035;
     // The maximum number of births.
-    private static int MAX_LITTER_SIZE = 4;
+    private static final int MAX_LITTER_SIZE = 4;
     // The food value of a single rabbit. In effect, this is the
     // number of steps a fox can go before it has to eat again.
     private static final int RABBIT_FOOD_VALUE = 22;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
     
     // Individual characteristics (instance fields).
     // The fox's food level, which is increased by eating rabbits.
@@ -43,12 +42,14 @@ public class Fox extends Animal
      * @param randomAge If true, the fox will have random age and hunger level.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param config The rules of this species in the simulation.
      */
-    public Fox(boolean randomAge, Field field, Location location)
+    public Fox(boolean randomAge, Field field, Location location, SpeciesConfig config)
     {
-        super(field, location);
+        super(field, location, config);
         if(randomAge) {
-            setAge(rand.nextInt(MAX_AGE));
+            Random rand = Randomizer.current();
+            setAge(rand.nextInt(getMaxAge()));
             foodLevel = rand.nextInt(RABBIT_FOOD_VALUE);
         }
         else {
@@ -69,16 +70,18 @@ public class Fox extends Animal
         incrementAge();
         incrementHunger();
         if(isAlive()) {
-            giveBirth(newFoxes);            
+            // One look around serves breeding, feeding and moving.
+            Neighbourhood around = getField().adjacentCells(getCell());
+            giveBirth(newFoxes, around);            
             // Move towards a source of food if found.
-            Location newLocation = findFood();
-            if(newLocation == null) { 
+            int newCell = findFood(around);
+            if(newCell < 0) { 
                 // No food found - try to move to a free location.
-                newLocation = getField().freeAdjacentLocation(getLocation());
+                newCell = around.takeFree(Species.FOX);
             }
             // See if it was possible to move.
-            if(newLocation != null) {
-                setLocation(newLocation);
+            if(newCell >= 0) {
+                setCell(newCell);
             }
             else {
                 // Overcrowding.
@@ -101,44 +104,47 @@ public class Fox extends Animal
     /**
      * Look for rabbits adjacent to the current location.
      * Only the first live rabbit is eaten.
-     * @return Where food was found, or null if it wasn't.
+     * @param around The neighbourhood of this fox.
+     * @return The cell where food was found, or -1 if it wasn't.
      */
-    private Location findFood()
+    private int findFood(Neighbourhood around)
     {
         Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Rabbit) {
-                Rabbit rabbit = (Rabbit) animal;
+        for(int i = 0; i < around.size(); i++) {
+            int where = around.get(i);
+            if(around.getSpecies(i) == Species.RABBIT) {
+                Rabbit rabbit = (Rabbit) field.getObjectAt(where);
                 if(rabbit.isAlive()) { 
                     rabbit.setDead();
                     foodLevel = RABBIT_FOOD_VALUE;
+                    around.setSpecies(i, Species.FOX);
                     // Remove the dead rabbit from the field.
                     return where;
                 }
             }
         }
-        return null;
+        return -1;
     }
     
     /**
      * Check whether or not this fox is to give birth at this step.
      * New births will be made into free adjacent locations.
      * @param newFoxes A list to return newly born foxes.
+     * @param around The neighbourhood of this fox.
      */
-    private void giveBirth(List<Actor> newFoxes)
+    private void giveBirth(List<Actor> newFoxes, Neighbourhood around)
     {
         // New foxes are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // Take free cells from the neighbourhood snapshot.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Fox young = new Fox(false, field, loc);
+        for(int b = 0; b < births; b++) {
+            int cell = around.takeFree(Species.FOX);
+            if(cell < 0) {
+                break;
+            }
+            Location loc = field.locationOf(cell);
+            Fox young = new Fox(false, field, loc, getConfig().getYoung());
             newFoxes.add(young);
         }
     }
@@ -151,8 +157,9 @@ public class Fox extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        Random rand = Randomizer.current();
+        if(canBreed() && rand.nextDouble() <= getConfig().getBreedingProbability()) {
+            births = rand.nextInt(getConfig().getMaxLitterSize()) + 1;
         }
         return births;
     }
@@ -160,59 +167,38 @@ public class Fox extends Animal
     /**
      * @return The age at which a fox starts to breed
      */    
-    public static void setBreedingAge(int breeding_age)
+    protected int getBreedingAge() 
     {
-    	if (breeding_age >= 0)
-    		breeding_age = breeding_age;
+            return getConfig().getBreedingAge();
     }
     
     /**
-     * setter voor max_age
-     * @param max_age
+     * Create the default rules for foxes, for one simulation.
+     * @return A new configuration with the default values.
      */
-    public static void setMaxAge(int max_age)
+    public static SpeciesConfig createConfig()
     {
-    	if (max_age >= 1)
-    		max_age = max_age;
+        return new SpeciesConfig(BREEDING_AGE, MAX_AGE, BREEDING_PROBABILITY, MAX_LITTER_SIZE, RABBIT_FOOD_VALUE);
     }
     
     /**
-     * setter voor breeding_probability
-     * @param breeding_probability
+     * Create an empty herd of foxes that follows the same rules,
+     * for the entity store.
+     * @param field The field the herd lives in.
+     * @param config The rules of the species.
+     * @return The new herd.
      */
-    public static void setBreedingProbability(double breeding_probability)
+    static Herd createHerd(Field field, SpeciesConfig config)
     {
-    	if (breeding_probability >= 0)
-    		breeding_probability = breeding_probability;
+        return new Herd(Species.FOX, Fox.class, field, config, 1 << Species.RABBIT);
     }
     
     /**
-     * setter voor max_litter_size
-     * @param max_litter_size
-     */
-    public static void setMaxLitterSize(int max_litter_size)
-    {
-    	if (max_litter_size >= 1)
-    		max_litter_size = max_litter_size;
-    }  
-    
-    /**
-     * default settings
+     * @return The species code of a fox.
      */
-    public static void setDefault()
+    public byte getSpecies()
     {
-    	BREEDING_AGE = 3;
-    	MAX_AGE = 150;
-    	BREEDING_PROBABILITY = 0.035;
-    	MAX_LITTER_SIZE = 4;
-    }
-    
-    /**
-     * @return The age at which a fox starts to breed
-     */    
-    protected int getBreedingAge() 
-    {
-            return BREEDING_AGE;
+        return Species.FOX;
     }
             
     /**
@@ -220,8 +206,23 @@ public class Fox extends Animal
      */       
     protected int getMaxAge()
     {
-            return MAX_AGE;
+            return getConfig().getMaxAge();
     }
 
+    /**
+     * @return The food level of the fox.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
 
+    /**
+     * Set the food level of the fox, e.g. when restoring a checkpoint.
+     * @param foodLevel The food level.
+     */
+    void setFoodLevel(int foodLevel)
+    {
+        this.foodLevel = foodLevel;
+    }
 }
@@ -2,18 +2,20 @@ package Model;
 import java.util.List;
 import Logic.Field;
 import Logic.Location;
+import Logic.Neighbourhood;
+import Logic.Species;
 
 public class Grass extends Plant {
-    // Characteristics shared by all grass (class variables).
+    // The default characteristics of grass; see createConfig.
 
     // The age at which a grass can start to breed.
-    private static int BREEDING_AGE = 3;
+    private static final int BREEDING_AGE = 3;
     // The age to which a grass can live.
-    private static int MAX_AGE = 12;
+    private static final int MAX_AGE = 12;
     // The likelihood of a grass breeding.
-    private static double BREEDING_PROBABILITY = 0.045;
+    private static final double BREEDING_PROBABILITY = 0.045;
     // The maximum number of births.
-    private static int MAX_LITTER_SIZE = 6;
+    private static final int MAX_LITTER_SIZE = 6;
        
     /**
      * Create a new grass. A grass may be created with age
@@ -22,13 +24,14 @@ public class Grass extends Plant {
      * @param randomAge If true, the grass will have a random age.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param config The rules of this species in the simulation.
      */
-    public Grass(boolean randomAge, Field field, Location location)
+    public Grass(boolean randomAge, Field field, Location location, SpeciesConfig config)
     {
-        super(field, location);
+        super(field, location, config);
         setAge(0);
         if(randomAge) {
-        	setAge(getRandom().nextInt(MAX_AGE));
+        	setAge(getRandom().nextInt(getMaxAge()));
         }
     }
     
@@ -44,9 +47,9 @@ public class Grass extends Plant {
             
         	giveBirth(newGrass);            
             // Try to move into a free location.
-            Location newLocation = getField().freeAdjacentLocation(getLocation());
-            if(newLocation != null) {
-                setLocation(newLocation);
+            int newCell = getField().freeAdjacentCell(getCell());
+            if(newCell >= 0) {
+                setCell(newCell);
             }
             else {
                 // Overcrowding.
@@ -82,73 +85,38 @@ public class Grass extends Plant {
         // New grasss are born into adjacent locations.
         // Get a list of adjacent free locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
+        Neighbourhood free = field.freeAdjacentCells(getCell());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Grass young = new Grass(false, field, loc);
+        for(int b = 0; b < births && b < free.size(); b++) {
+            Location loc = field.locationOf(free.get(b));
+            Grass young = new Grass(false, field, loc, getConfig().getYoung());
             newGrass.add(young);
         }
     }
-
-    /**
-     * setter voor breeding_age
-     * @param breeding_age
-     */
-    public static void setBreedingAge(int breeding_age)
-    {
-    	if (breeding_age >= 0)
-    		Grass.BREEDING_AGE = breeding_age;
-    }
-    
-    
-    /**
-     * setter voor max_age
-     * @param max_age
-     */
-    public static void setMaxAge(int max_age)
-    {
-    	if (max_age >= 1)
-    		Grass.MAX_AGE = max_age;
-    }
     
     /**
-     * setter voor breeding_probability
-     * @param breeding_probability
+     * Getter om breeding_age op te halen
      */
-    public static void setBreedingProbability(double breeding_probability)
+    protected int getBreedingAge()
     {
-    	if (breeding_probability >= 0)
-    		Grass.BREEDING_PROBABILITY = breeding_probability;
+    	return getConfig().getBreedingAge();
     }
     
     /**
-     * setter voor max_litter_size
-     * @param max_litter_size
-     */
-    public static void setMaxLitterSize(int max_litter_size)
-    {
-    	if (max_litter_size >= 1)
-    		Grass.MAX_LITTER_SIZE = max_litter_size;
-    }  
-    
-    /**
-     * default settings
+     * Create the default rules for grass, for one simulation.
+     * @return A new configuration with the default values.
      */
-    public static void setDefault()
+    public static SpeciesConfig createConfig()
     {
-    	BREEDING_AGE = 1;
-    	MAX_AGE = 100;
-    	BREEDING_PROBABILITY = 0.02;
-    	MAX_LITTER_SIZE = 100;
+        return new SpeciesConfig(BREEDING_AGE, MAX_AGE, BREEDING_PROBABILITY, MAX_LITTER_SIZE, 0);
     }
-    
+
     /**
-     * Getter om breeding_age op te halen
+     * @return The species code of a grass.
      */
-    protected int getBreedingAge()
+    public byte getSpecies()
     {
-    	return BREEDING_AGE;
+        return Species.GRASS;
     }
     
     /**
@@ -157,7 +125,7 @@ public class Grass extends Plant {
      */
     protected int getMaxAge()
     {
-    	return MAX_AGE;
+    	return getConfig().getMaxAge();
     }
     
     /**
@@ -166,7 +134,7 @@ public class Grass extends Plant {
      */
     protected int getMaxLitterSize()
     {
-    	return MAX_LITTER_SIZE;
+    	return getConfig().getMaxLitterSize();
     }
     
     /**
@@ -175,7 +143,7 @@ public class Grass extends Plant {
      */
     protected double getBreedingProbability()
     {
-    	return BREEDING_PROBABILITY;
+    	return getConfig().getBreedingProbability();
     }
     
     /**
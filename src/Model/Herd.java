@@ -0,0 +1,293 @@
+package Model;
+import java.util.Arrays;
+import java.util.Random;
+
+import Logic.Field;
+import Logic.Neighbourhood;
+import Logic.RandomStream;
+import Logic.Randomizer;
+
+/**
+ * All animals of one species, kept as a structure of arrays instead of
+ * one object per animal. Animal i has age[i], foodLevel[i] and cell[i];
+ * together that is 12 bytes per animal. Ages and food levels are ints,
+ * as in Animal, so every maximum age a SpeciesConfig accepts works. The animals live densely in the
+ * first size entries. A dead animal gets cell -1 and its slot is reused
+ * when the herd is compacted at the end of a step.
+ *
+ * A herd follows the same rules as the matching Animal subclass: it
+ * ages, gets hungry, breeds into free neighbouring cells, eats the
+ * first prey it finds next to it and moves, or dies of overcrowding.
+ * In the field its animals are stored as entities, see
+ * Field.placeEntity, so they have no object of their own.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Herd
+{
+    // The species code and class of the animals.
+    private final byte species;
+    private final Class<?> speciesClass;
+    // The field the animals live in.
+    private final Field field;
+    // The rules of the species; read at the start of every step.
+    private final SpeciesConfig config;
+    // Steps an animal can go on one meal; 0 if it never gets hungry.
+    private final int foodValue;
+    // Bit (1 << species) is set for every species this herd eats.
+    private final int preyMask;
+    // The herd that receives the newborns, normally this one.
+    private Herd young;
+
+    // The age of every animal.
+    private int[] age;
+    // The food level of every animal.
+    private int[] foodLevel;
+    // The cell of every animal, -1 once it has died.
+    private int[] cell;
+    // The number of slots in use, dead or alive.
+    private int size;
+    // The number of living animals.
+    private int alive;
+
+    /**
+     * Create an empty herd.
+     * @param species The species code of the animals.
+     * @param speciesClass The Animal subclass with the same rules.
+     * @param field The field the animals live in.
+     * @param config The rules of the species in the simulation.
+     * @param preyMask Bit (1 << species) set for every prey species.
+     */
+    public Herd(byte species, Class<?> speciesClass, Field field, SpeciesConfig config, int preyMask)
+    {
+        this.species = species;
+        this.speciesClass = speciesClass;
+        this.field = field;
+        this.config = config;
+        foodValue = config.getFoodValue();
+        this.preyMask = preyMask;
+        young = this;
+        age = new int[64];
+        foodLevel = new int[64];
+        cell = new int[64];
+    }
+
+    /**
+     * Let newborns join another herd, e.g. because the species gives
+     * birth to a different species.
+     * @param young The herd that receives the newborns.
+     */
+    public void setYoung(Herd young)
+    {
+        this.young = young;
+    }
+
+    /**
+     * @return The species code of the animals.
+     */
+    public byte getSpecies()
+    {
+        return species;
+    }
+
+    /**
+     * @return The number of living animals.
+     */
+    public int getAlive()
+    {
+        return alive;
+    }
+
+    /**
+     * @return The number of slots in use; after compact, the number of
+     *         living animals.
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @param i The slot of an animal.
+     * @return The cell of the animal, or -1 if it has died.
+     */
+    int getCell(int i)
+    {
+        return cell[i];
+    }
+
+    /**
+     * @param i The slot of an animal.
+     * @return The age of the animal.
+     */
+    int getAge(int i)
+    {
+        return age[i];
+    }
+
+    /**
+     * @param i The slot of an animal.
+     * @return The food level of the animal.
+     */
+    int getFoodLevel(int i)
+    {
+        return foodLevel[i];
+    }
+
+    /**
+     * Add an animal to the herd and place it in the field.
+     * @param where The cell of the animal.
+     * @param randomAge If true, the animal gets a random age and food
+     *                  level, like the populating Animal constructors.
+     */
+    public void spawn(int where, boolean randomAge)
+    {
+        if(randomAge) {
+            Random rand = Randomizer.current();
+            int animalAge = rand.nextInt(config.getMaxAge());
+            add(where, animalAge, foodValue > 0 ? rand.nextInt(foodValue) : 0);
+        }
+        else {
+            add(where, 0, foodValue);
+        }
+    }
+
+    /**
+     * Let every animal that was alive at the start act once.
+     * Newborns join at the end and do not act until the next step.
+     * @param herds All herds of the field, to find eaten prey.
+     */
+    public void act(Herds herds)
+    {
+        int breedingAge = config.getBreedingAge();
+        int maxAge = config.getMaxAge();
+        double breedingProbability = config.getBreedingProbability();
+        int maxLitterSize = config.getMaxLitterSize();
+        Random rand = Randomizer.current();
+        // A counter-based stream keys the draws of an animal by its cell.
+        RandomStream stream = rand instanceof RandomStream ? (RandomStream) rand : null;
+        int count = size;
+        for(int i = 0; i < count; i++) {
+            if(cell[i] < 0) {
+                continue;
+            }
+            if(stream != null) {
+                stream.startCell(cell[i]);
+            }
+            // Age and hunger.
+            if(++age[i] > maxAge) {
+                kill(i);
+                continue;
+            }
+            if(foodValue > 0 && --foodLevel[i] <= 0) {
+                kill(i);
+                continue;
+            }
+            // One look around serves breeding, feeding and moving.
+            Neighbourhood around = field.adjacentCells(cell[i]);
+            if(age[i] >= breedingAge && rand.nextDouble() <= breedingProbability) {
+                int births = rand.nextInt(maxLitterSize) + 1;
+                for(int b = 0; b < births; b++) {
+                    int free = around.takeFree(young.species);
+                    if(free < 0) {
+                        break;
+                    }
+                    young.add(free, 0, young.foodValue);
+                }
+            }
+            int target = -1;
+            if(preyMask != 0) {
+                for(int n = 0; n < around.size(); n++) {
+                    byte prey = around.getSpecies(n);
+                    if((preyMask & (1 << prey)) != 0) {
+                        target = around.get(n);
+                        herds.killAt(target, prey);
+                        around.setSpecies(n, species);
+                        foodLevel[i] = foodValue;
+                        break;
+                    }
+                }
+            }
+            if(target < 0) {
+                target = around.takeFree(species);
+            }
+            if(target >= 0) {
+                field.clear(cell[i]);
+                field.placeEntity(i, species, target);
+                cell[i] = target;
+            }
+            else {
+                // Overcrowding.
+                kill(i);
+            }
+        }
+    }
+
+    /**
+     * Kill an animal and remove it from the field.
+     * @param i The slot of the animal.
+     */
+    public void kill(int i)
+    {
+        if(cell[i] >= 0) {
+            field.clear(cell[i]);
+            cell[i] = -1;
+            alive--;
+            field.countEntity(species, speciesClass, -1);
+        }
+    }
+
+    /**
+     * Move the living animals to the front, so the dead slots can be
+     * used again, and tell the field about their new slots.
+     */
+    public void compact()
+    {
+        int kept = 0;
+        for(int i = 0; i < size; i++) {
+            if(cell[i] >= 0) {
+                if(kept != i) {
+                    age[kept] = age[i];
+                    foodLevel[kept] = foodLevel[i];
+                    cell[kept] = cell[i];
+                    field.placeEntity(kept, species, cell[kept]);
+                }
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * Forget all animals, e.g. after the field was cleared.
+     */
+    public void clear()
+    {
+        size = 0;
+        alive = 0;
+    }
+
+    /**
+     * Add an animal in the next free slot and place it in the field.
+     * @param where The cell of the animal.
+     * @param animalAge The age of the animal.
+     * @param food The food level of the animal.
+     */
+    void add(int where, int animalAge, int food)
+    {
+        if(size == cell.length) {
+            int capacity = size * 2;
+            age = Arrays.copyOf(age, capacity);
+            foodLevel = Arrays.copyOf(foodLevel, capacity);
+            cell = Arrays.copyOf(cell, capacity);
+        }
+        age[size] = animalAge;
+        foodLevel[size] = food;
+        cell[size] = where;
+        field.placeEntity(size, species, where);
+        field.countEntity(species, speciesClass, 1);
+        size++;
+        alive++;
+    }
+}
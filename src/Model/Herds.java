@@ -0,0 +1,124 @@
+package Model;
+
+import Logic.Field;
+import Logic.Species;
+
+/**
+ * The entity store of a field: one Herd per animal species, so that
+ * rabbits, foxes, bears and alleseters are kept as arrays instead of
+ * objects. Grass and hunters stay ordinary actors.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Herds
+{
+    // The field the herds live in.
+    private final Field field;
+    // The herd per species code, null for species that are no herd.
+    private final Herd[] herds;
+
+    /**
+     * Create empty herds for all animal species.
+     * @param field The field the herds live in.
+     * @param rabbit The rules of rabbits.
+     * @param fox The rules of foxes.
+     * @param bear The rules of bears.
+     * @param allesEter The rules of alleseters.
+     */
+    public Herds(Field field, SpeciesConfig rabbit, SpeciesConfig fox, SpeciesConfig bear,
+                 SpeciesConfig allesEter)
+    {
+        this.field = field;
+        herds = new Herd[Species.COUNT];
+        herds[Species.RABBIT] = Rabbit.createHerd(field, rabbit);
+        herds[Species.FOX] = Fox.createHerd(field, fox);
+        herds[Species.BEAR] = Bear.createHerd(field, bear);
+        herds[Species.ALLESETER] = AllesEter.createHerd(field, allesEter);
+        // Like AllesEter.giveBirth, alleseters give birth to bears.
+        herds[Species.ALLESETER].setYoung(herds[Species.BEAR]);
+    }
+
+    /**
+     * Tell whether a species is kept in a herd.
+     * @param species The species code.
+     * @return true if the species has a herd.
+     */
+    public boolean isHerd(byte species)
+    {
+        return herds[species] != null;
+    }
+
+    /**
+     * @param species The species code.
+     * @return The herd of the species, or null if it has none.
+     */
+    Herd getHerd(byte species)
+    {
+        return herds[species];
+    }
+
+    /**
+     * Add an animal to the herd of its species.
+     * @param species The species code.
+     * @param cell The cell of the animal.
+     * @param randomAge If true, the animal gets a random age and food level.
+     */
+    public void spawn(byte species, int cell, boolean randomAge)
+    {
+        herds[species].spawn(cell, randomAge);
+    }
+
+    /**
+     * Let every herd act once, in species order, and compact them.
+     */
+    public void act()
+    {
+        for(Herd herd : herds) {
+            if(herd != null) {
+                herd.act(this);
+            }
+        }
+        for(Herd herd : herds) {
+            if(herd != null) {
+                herd.compact();
+            }
+        }
+    }
+
+    /**
+     * Kill whatever occupies a cell, be it a herd animal or an actor.
+     * @param cell The cell index.
+     * @param species The species in the cell.
+     */
+    public void killAt(int cell, byte species)
+    {
+        if(herds[species] != null) {
+            herds[species].kill(field.getEntityAt(cell));
+        }
+        else {
+            Object occupant = field.getObjectAt(cell);
+            if(occupant instanceof Animal) {
+                ((Animal) occupant).setDead();
+            }
+            else if(occupant instanceof Plant) {
+                ((Plant) occupant).setDead();
+            }
+            else if(occupant instanceof Hunter) {
+                ((Hunter) occupant).setDead();
+            }
+        }
+    }
+
+    /**
+     * Forget all animals, e.g. after the field was cleared.
+     */
+    public void clear()
+    {
+        for(Herd herd : herds) {
+            if(herd != null) {
+                herd.clear();
+            }
+        }
+    }
+}
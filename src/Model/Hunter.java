@@ -1,9 +1,10 @@
 package Model;
 import java.util.List;
-import java.util.Iterator;
 
 import Logic.Field;
 import Logic.Location;
+import Logic.Neighbourhood;
+import Logic.Species;
 
 /**
  * De klasse Hunter. Hunters jagen op dieren. 
@@ -18,6 +19,8 @@ public class Hunter implements Actor
     private Location location;
     // Determine if the hunter is alive
     private boolean alive;
+    // The entity id given by the field, 0 if none.
+    private int occupantId;
     
     /**
      * Constructor for objects of class Hunter
@@ -54,14 +57,15 @@ public class Hunter implements Actor
     public void act(List<Actor> newHunters)
     {
     	// Move towards a source of food if found.
-        Location newLocation = findAnimal();
-        if(newLocation == null) { 
+        Field field = getField();
+        int newCell = findAnimal();
+        if(newCell < 0) { 
             // No food found - try to move to a free location.
-            newLocation = getField().freeAdjacentLocation(getLocation());
+            newCell = field.freeAdjacentCell(field.indexOf(getLocation()));
         }
         // See if it was possible to move.
-        if(newLocation != null) {
-            setLocation(newLocation);
+        if(newCell >= 0) {
+            setLocation(field.locationOf(newCell));
         }
         else{
             	// Overcrowding.
@@ -76,7 +80,7 @@ public class Hunter implements Actor
      */
     public void setLocation(int row, int col)
     {
-        this.location = new Location(row, col);
+        this.location = field != null ? field.locationOf(field.indexOf(row, col)) : new Location(row, col);
     }
 
     /**
@@ -91,15 +95,17 @@ public class Hunter implements Actor
     /**
      * Look for an animal adjacent to the current location.
      * Only the first live animal is shoot.
-     * @return Where an animal is found, or null if it wasn't.
+     * @return The cell where an animal is found, or -1 if it wasn't.
      */
-    private Location findAnimal()
+    private int findAnimal()
     {
         Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
+        Neighbourhood adjacent = field.adjacentCells(field.indexOf(getLocation()));
+        for(int i = 0; i < adjacent.size(); i++) {
+            int where = adjacent.get(i);
+            if(field.getSpeciesAt(where) == Species.EMPTY) {
+                continue;
+            }
             Object animal = field.getObjectAt(where);
             if(animal instanceof Bear) {
                 Bear bear = (Bear) animal;
@@ -126,7 +132,7 @@ public class Hunter implements Actor
                 }
             }
         }
-        return null;
+        return -1;
     }
     
     /**
@@ -136,11 +142,41 @@ public class Hunter implements Actor
     public void setDead()
     {
         if(location != null) {
-            field.clear(location);
+            // A hunter is not always placed in the field, so only clear
+            // the cell if it really holds this hunter.
+            if(field.getObjectAt(location) == this) {
+                field.clear(location);
+            }
+            field.release(this);
             location = null;
             field = null;
         }
     }
+
+    /**
+     * @return The species code of a hunter.
+     */
+    public byte getSpecies()
+    {
+        return Species.HUNTER;
+    }
+
+    /**
+     * @return The entity id given by the field, or 0 if it has none.
+     */
+    public int getOccupantId()
+    {
+        return occupantId;
+    }
+
+    /**
+     * Remember the entity id given by the field.
+     * @param id The entity id.
+     */
+    public void setOccupantId(int id)
+    {
+        occupantId = id;
+    }
     
     /**
      * Return the hunter's field.
@@ -24,21 +24,25 @@ public abstract class Plant implements Actor
     private int age;
     // An plant's food level, which is increased by eating.
     private int foodLevel;
+    // The entity id given by the field, 0 if none.
+    private int occupantId;
+    // The rules of the species in this simulation.
+    private final SpeciesConfig config;
 
     // The food value of a single plant. In effect, this is the
     // number of steps an plant can go before it has to eat again.
     public static final int GRASS_FOOD_VALUE = 12;
-    // A shared random number generator to control breeding.
-    protected static final Random rand = Randomizer.getRandom();
     
     /**
      * Create a new plant at location in field.
      * 
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param config The rules of the species in the simulation.
      */
-    public Plant(Field field, Location location)
+    public Plant(Field field, Location location, SpeciesConfig config)
     {
+        this.config = config;
         alive = true;
         this.field = field;
         setLocation(location);
@@ -76,11 +80,29 @@ public abstract class Plant implements Actor
         alive = false;
         if(location != null) {
             field.clear(location);
+            field.release(this);
             location = null;
             field = null;
         }
     }
 
+    /**
+     * @return The entity id given by the field, or 0 if it has none.
+     */
+    public int getOccupantId()
+    {
+        return occupantId;
+    }
+
+    /**
+     * Remember the entity id given by the field.
+     * @param id The entity id.
+     */
+    public void setOccupantId(int id)
+    {
+        occupantId = id;
+    }
+
     /**
      * Increase the age. This could result in the plant's death.
      */
@@ -102,7 +124,7 @@ public abstract class Plant implements Actor
      * Return the plant's location.
      * @return The plant's location.
      */
-    protected Location getLocation()
+    public Location getLocation()
     {
         return location;
     }
@@ -120,6 +142,32 @@ public abstract class Plant implements Actor
         field.place(this, newLocation);
     }
     
+    /**
+     * Return the index of the plant's cell in the field.
+     * @return The cell index.
+     */
+    protected int getCell()
+    {
+        return field.indexOf(location);
+    }
+
+    /**
+     * Move the plant to the cell with the given index.
+     * @param cell The new cell index.
+     */
+    protected void setCell(int cell)
+    {
+        setLocation(field.locationOf(cell));
+    }
+
+    /**
+     * @return The rules of the species in the simulation.
+     */
+    protected SpeciesConfig getConfig()
+    {
+        return config;
+    }
+    
     /**
      * Return the plant's field.
      * @return The plant's field.
@@ -186,12 +234,12 @@ public abstract class Plant implements Actor
 	}
 	
 	/**
-	 * Getter om Rand op te halen
+	 * Getter om de random generator van de huidige thread op te halen
 	 * @return rand random generator number
 	 */
 	protected Random getRandom()
 	{
-		return rand;
+		return Randomizer.current();
 	}
 	
     /**
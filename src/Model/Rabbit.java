@@ -1,10 +1,11 @@
 package Model;
 import java.util.List;
 import java.util.Random;
-import java.util.Iterator;
 
 import Logic.Field;
 import Logic.Location;
+import Logic.Neighbourhood;
+import Logic.Species;
 import Logic.Randomizer;
 
 /**
@@ -16,20 +17,18 @@ import Logic.Randomizer;
  */
 public class Rabbit extends Animal
 {
-    // Characteristics shared by all rabbits (class variables).
+    // The default characteristics of rabbits; see createConfig.
 
     // The age at which a rabbit can start to breed.
-    private static int BREEDING_AGE = 1;
+    private static final int BREEDING_AGE = 1;
     // The age to which a rabbit can live.
-    private static int MAX_AGE = 100;
+    private static final int MAX_AGE = 100;
     // The likelihood of a rabbit breeding.
-    private static double BREEDING_PROBABILITY = 0.045;
+    private static final double BREEDING_PROBABILITY = 0.045;
     // The maximum number of births.
-    private static int MAX_LITTER_SIZE = 12;
+    private static final int MAX_LITTER_SIZE = 12;
     // number of steps a rabbit can go before it has to eat again.
-    private static int GRASS_FOOD_VALUE = 14;
-    // A shared random number generator to control breeding.
-    private static Random rand = Randomizer.getRandom();
+    private static final int GRASS_FOOD_VALUE = 14;
     
     // Individual characteristics (instance fields).
     // The rabbit's food level, which is increased by eating rabbits.
@@ -43,12 +42,14 @@ public class Rabbit extends Animal
      * @param randomAge If true, the rabbit will have a random age.
      * @param field The field currently occupied.
      * @param location The location within the field.
+     * @param config The rules of this species in the simulation.
      */
-    public Rabbit(boolean randomAge, Field field, Location location)
+    public Rabbit(boolean randomAge, Field field, Location location, SpeciesConfig config)
     {            
-            super(field, location);
+            super(field, location, config);
             if(randomAge) {
-                setAge(rand.nextInt(MAX_AGE));            
+                Random rand = Randomizer.current();
+                setAge(rand.nextInt(getMaxAge()));            
         }
     }
     
@@ -63,9 +64,9 @@ public class Rabbit extends Animal
         if(isAlive()) {
             giveBirth(newRabbits);            
             // Try to move into a free location.
-            Location newLocation = getField().freeAdjacentLocation(getLocation());
-            if(newLocation != null) {
-                setLocation(newLocation);
+            int newCell = getField().freeAdjacentCell(getCell());
+            if(newCell >= 0) {
+                setCell(newCell);
             }
             else {
                 // Overcrowding.
@@ -76,19 +77,17 @@ public class Rabbit extends Animal
 
     /**
      * Look for grass adjacent to the current location.
-     * @return Where food was found, or null if it wasn't.
+     * @return The cell where food was found, or -1 if it wasn't.
      */
     
-    private Location findFood()
+    private int findFood()
     {
         Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object plant = field.getObjectAt(where);
-            if(plant instanceof Grass) {
-                Grass grass = (Grass) plant;
+        Neighbourhood adjacent = field.adjacentCells(getCell());
+        for(int i = 0; i < adjacent.size(); i++) {
+            int where = adjacent.get(i);
+            if(field.getSpeciesAt(where) == Species.GRASS) {
+                Grass grass = (Grass) field.getObjectAt(where);
                 if(grass.isAlive()) { 
                     grass.setDead();
                     foodLevel = GRASS_FOOD_VALUE;;
@@ -96,7 +95,7 @@ public class Rabbit extends Animal
                 }
             }
         }
-        return null;
+        return -1;
     }
     
     /**
@@ -109,11 +108,11 @@ public class Rabbit extends Animal
         // New rabbits are born into adjacent locations.
         // Get a list of adjacent free locations.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
+        Neighbourhood free = field.freeAdjacentCells(getCell());
         int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Rabbit young = new Rabbit(false, field, loc);
+        for(int b = 0; b < births && b < free.size(); b++) {
+            Location loc = field.locationOf(free.get(b));
+            Rabbit young = new Rabbit(false, field, loc, getConfig().getYoung());
             newRabbits.add(young);
         }
     }
@@ -126,76 +125,73 @@ public class Rabbit extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        Random rand = Randomizer.current();
+        if(canBreed() && rand.nextDouble() <= getConfig().getBreedingProbability()) {
+            births = rand.nextInt(getConfig().getMaxLitterSize()) + 1;
         }
         return births;
     }
     
+
     /**
-     * @return The age at which a fox starts to breed
+     * @return The age at which a rabbit starts to breed
      */    
-    public static void setBreedingAge(int breeding_age)
+    protected int getBreedingAge() 
     {
-    	if (breeding_age >= 0)
-    		breeding_age = breeding_age;
+            return getConfig().getBreedingAge();
     }
     
     /**
-     * setter voor max_age
-     * @param max_age
+     * Create the default rules for rabbits, for one simulation.
+     * @return A new configuration with the default values.
      */
-    public static void setMaxAge(int max_age)
+    public static SpeciesConfig createConfig()
     {
-    	if (max_age >= 1)
-    		max_age = max_age;
+        return new SpeciesConfig(BREEDING_AGE, MAX_AGE, BREEDING_PROBABILITY, MAX_LITTER_SIZE, 0);
     }
-    
+
     /**
-     * setter voor breeding_probability
-     * @param breeding_probability
+     * Create an empty herd of rabbits that follows the same rules,
+     * for the entity store.
+     * @param field The field the herd lives in.
+     * @param config The rules of the species.
+     * @return The new herd.
      */
-    public static void setBreedingProbability(double breeding_probability)
+    static Herd createHerd(Field field, SpeciesConfig config)
     {
-    	if (breeding_probability >= 0)
-    		breeding_probability = breeding_probability;
+        return new Herd(Species.RABBIT, Rabbit.class, field, config, 0);
     }
-    
+
     /**
-     * setter voor max_litter_size
-     * @param max_litter_size
+     * @return The species code of a rabbit.
      */
-    public static void setMaxLitterSize(int max_litter_size)
+    public byte getSpecies()
     {
-    	if (max_litter_size >= 1)
-    		max_litter_size = max_litter_size;
-    }  
+        return Species.RABBIT;
+    }
     
     /**
-     * default settings
-     */
-    public static void setDefault()
+     * @return The age at which a rabbit dies.
+     */       
+    protected int getMaxAge()
     {
-    	BREEDING_AGE = 1;
-    	MAX_AGE = 100;
-    	BREEDING_PROBABILITY = 0.045;
-    	MAX_LITTER_SIZE = 12;
+            return getConfig().getMaxAge();
     }
-    
 
     /**
-     * @return The age at which a rabbit starts to breed
-     */    
-    protected int getBreedingAge() 
+     * @return The food level of the rabbit.
+     */
+    int getFoodLevel()
     {
-            return BREEDING_AGE;
+        return foodLevel;
     }
-    
+
     /**
-     * @return The age at which a rabbit dies.
-     */       
-    protected int getMaxAge()
+     * Set the food level of the rabbit, e.g. when restoring a checkpoint.
+     * @param foodLevel The food level.
+     */
+    void setFoodLevel(int foodLevel)
     {
-            return MAX_AGE;
+        this.foodLevel = foodLevel;
     }
 }
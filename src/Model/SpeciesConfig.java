@@ -0,0 +1,164 @@
+package Model;
+
+/**
+ * The rules of one species in one simulation: when it breeds, how old
+ * it gets, how many young it has and how long a meal lasts. Every
+ * simulation has its own SpeciesConfig objects, so simulations that
+ * run side by side can use different rules without interfering.
+ *
+ * The settings may be changed while the simulation runs, e.g. from the
+ * settings window; actors and herds read them at every step.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class SpeciesConfig
+{
+    // The values setDefault returns to.
+    private final int defaultBreedingAge;
+    private final int defaultMaxAge;
+    private final double defaultBreedingProbability;
+    private final int defaultMaxLitterSize;
+
+    // The age at which an individual can start to breed.
+    private volatile int breedingAge;
+    // The age to which an individual can live.
+    private volatile int maxAge;
+    // The likelihood of breeding per step.
+    private volatile double breedingProbability;
+    // The maximum number of births.
+    private volatile int maxLitterSize;
+    // Steps one meal lasts, 0 if the species never gets hungry.
+    private final int foodValue;
+    // The rules of the young, normally this object.
+    private SpeciesConfig young;
+
+    /**
+     * Create the rules of a species.
+     * @param breedingAge The age at which an individual can breed.
+     * @param maxAge The age to which an individual can live.
+     * @param breedingProbability The likelihood of breeding per step.
+     * @param maxLitterSize The maximum number of births.
+     * @param foodValue Steps one meal lasts, 0 for no hunger.
+     */
+    public SpeciesConfig(int breedingAge, int maxAge, double breedingProbability,
+                         int maxLitterSize, int foodValue)
+    {
+        defaultBreedingAge = breedingAge;
+        defaultMaxAge = maxAge;
+        defaultBreedingProbability = breedingProbability;
+        defaultMaxLitterSize = maxLitterSize;
+        this.foodValue = foodValue;
+        young = this;
+        setDefault();
+    }
+
+    /**
+     * Let the young be born with the rules of another species, e.g.
+     * because the species gives birth to a different species.
+     * @param young The rules of the young.
+     */
+    public void setYoung(SpeciesConfig young)
+    {
+        this.young = young;
+    }
+
+    /**
+     * @return The rules of the young.
+     */
+    public SpeciesConfig getYoung()
+    {
+        return young;
+    }
+
+    /**
+     * @return The age at which an individual can start to breed.
+     */
+    public int getBreedingAge()
+    {
+        return breedingAge;
+    }
+
+    /**
+     * setter voor breeding_age
+     * @param breedingAge The new breeding age; ignored if negative.
+     */
+    public void setBreedingAge(int breedingAge)
+    {
+        if (breedingAge >= 0)
+            this.breedingAge = breedingAge;
+    }
+
+    /**
+     * @return The age to which an individual can live.
+     */
+    public int getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * setter voor max_age
+     * @param maxAge The new maximum age; ignored if below 1.
+     */
+    public void setMaxAge(int maxAge)
+    {
+        if (maxAge >= 1)
+            this.maxAge = maxAge;
+    }
+
+    /**
+     * @return The likelihood of breeding per step.
+     */
+    public double getBreedingProbability()
+    {
+        return breedingProbability;
+    }
+
+    /**
+     * setter voor breeding_probability
+     * @param breedingProbability The new probability; ignored if negative.
+     */
+    public void setBreedingProbability(double breedingProbability)
+    {
+        if (breedingProbability >= 0)
+            this.breedingProbability = breedingProbability;
+    }
+
+    /**
+     * @return The maximum number of births.
+     */
+    public int getMaxLitterSize()
+    {
+        return maxLitterSize;
+    }
+
+    /**
+     * setter voor max_litter_size
+     * @param maxLitterSize The new maximum; ignored if below 1.
+     */
+    public void setMaxLitterSize(int maxLitterSize)
+    {
+        if (maxLitterSize >= 1)
+            this.maxLitterSize = maxLitterSize;
+    }
+
+    /**
+     * @return Steps one meal lasts, 0 if the species never gets hungry.
+     */
+    public int getFoodValue()
+    {
+        return foodValue;
+    }
+
+    /**
+     * default settings
+     */
+    public void setDefault()
+    {
+        breedingAge = defaultBreedingAge;
+        maxAge = defaultMaxAge;
+        breedingProbability = defaultBreedingProbability;
+        maxLitterSize = defaultMaxLitterSize;
+    }
+}
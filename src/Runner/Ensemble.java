@@ -0,0 +1,284 @@
+package Runner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import Logic.Field;
+import Logic.Species;
+import Main.SimulationConfig;
+import Main.Simulator;
+import Main.SimulatorListener;
+import Main.StepResult;
+
+/**
+ * A Monte Carlo ensemble: many runs of the same settings with different
+ * seeds, to see how likely an outcome such as coexistence is rather
+ * than what one run happened to do. The runs go on side by side on a
+ * number of worker threads; each run adds its populations to the
+ * StepStats of every step as it passes it, and is then forgotten. The
+ * memory an ensemble takes grows with the number of steps reported on,
+ * not with the number of runs.
+ *
+ * Unlike a single simulation, a run of an ensemble is not stopped when
+ * it is no longer viable, so every step has a number from every run and
+ * a species that died out counts as extinct at every later step.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Ensemble
+{
+    private final SimulationConfig config;
+    private final int runs;
+    private final int steps;
+    private long baseSeed;
+    private int depth, width;
+    private int threads;
+    // Every how many steps statistics are kept.
+    private int interval;
+    // The statistics of the reported steps, filled by run.
+    private StepStats[] stats;
+
+    /**
+     * Create an ensemble on a field of the default size, with one worker
+     * thread per core and statistics at every step. The settings are
+     * shared by the runs and must not be changed while they go on.
+     * @param config The settings of every run.
+     * @param runs The number of runs; at least one.
+     * @param steps The number of steps of every run.
+     */
+    public Ensemble(SimulationConfig config, int runs, int steps)
+    {
+        if (runs <= 0 || steps < 0)
+        {
+            throw new IllegalArgumentException("Invalid ensemble of " + runs + " runs of " + steps + " steps");
+        }
+        this.config = config;
+        this.runs = runs;
+        this.steps = steps;
+        depth = Simulator.DEFAULT_DEPTH;
+        width = Simulator.DEFAULT_WIDTH;
+        threads = Runtime.getRuntime().availableProcessors();
+        interval = 1;
+    }
+
+    /**
+     * @param baseSeed The seed of the first run; the others use the
+     *                 seeds that follow it.
+     */
+    public void setBaseSeed(long baseSeed)
+    {
+        this.baseSeed = baseSeed;
+    }
+
+    /**
+     * Choose the size of the field of every run.
+     * @param depth The depth of the field; greater than zero.
+     * @param width The width of the field; greater than zero.
+     */
+    public void setFieldSize(int depth, int width)
+    {
+        Field.checkSize(depth, width);
+        this.depth = depth;
+        this.width = width;
+    }
+
+    /**
+     * @param threads The number of worker threads; at least one.
+     */
+    public void setThreads(int threads)
+    {
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("Number of threads must be greater than zero: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Keep statistics only every so many steps, to save memory on long
+     * runs. Step 0 and the last step are always kept.
+     * @param interval The number of steps between two reported steps;
+     *                 at least one.
+     */
+    public void setInterval(int interval)
+    {
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException("Interval must be greater than zero: " + interval);
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Perform all runs. Returns when every run has ended.
+     * @throws InterruptedException If the thread is interrupted while
+     *         waiting for the runs.
+     */
+    public void run() throws InterruptedException
+    {
+        stats = new StepStats[steps + 1];
+        for (int step = 0; step <= steps; step++)
+        {
+            if (isReported(step))
+            {
+                stats[step] = new StepStats(step);
+            }
+        }
+
+        final AtomicInteger nextRun = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "ensemble-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Every worker takes the next run until there are none left, so
+        // no task per run is ever queued.
+        for (int t = 0; t < threads; t++)
+        {
+            pool.execute(new Runnable() {
+                public void run()
+                {
+                    int run;
+                    while (failure.get() == null && (run = nextRun.getAndIncrement()) < runs)
+                    {
+                        try
+                        {
+                            runOne(baseSeed + run);
+                        }
+                        catch (Throwable t)
+                        {
+                            failure.compareAndSet(null, t);
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        try
+        {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            // Let the workers stop after their current run.
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+        Throwable t = failure.get();
+        if (t != null)
+        {
+            throw new IllegalStateException("A run of the ensemble failed", t);
+        }
+    }
+
+    /**
+     * Perform one run and add it to the statistics.
+     * @param seed The master seed of the run.
+     */
+    private void runOne(long seed)
+    {
+        Simulator simulator = new Simulator(depth, width, false, config, seed);
+        simulator.addListener(new SimulatorListener() {
+            public void stepPerformed(StepResult result)
+            {
+                StepStats step = stats[result.getStep()];
+                if (step != null)
+                {
+                    step.add(result);
+                }
+            }
+        });
+        // The starting state was shown before the listener was added.
+        stats[0].add(new StepResult(0, simulator.getField()));
+        for (int step = 1; step <= steps; step++)
+        {
+            simulator.simulateOneStep();
+        }
+    }
+
+    /**
+     * @return true if statistics are kept for the step.
+     */
+    private boolean isReported(int step)
+    {
+        return step % interval == 0 || step == steps;
+    }
+
+    /**
+     * Return the statistics of a step, once the ensemble has run.
+     * @param step The step.
+     * @return The statistics, or null if they were not kept for the step.
+     */
+    public StepStats getStepStats(int step)
+    {
+        if (stats == null)
+        {
+            throw new IllegalStateException("The ensemble has not run");
+        }
+        return step >= 0 && step <= steps ? stats[step] : null;
+    }
+
+    /**
+     * Write the statistics of every reported step and species as comma
+     * separated values: the runs, the mean population with its standard
+     * deviation and 95% confidence interval, the estimated quantiles,
+     * the extinction probability and the coexistence probability, both
+     * with 95% confidence intervals.
+     * @param out Where the report goes; it is not closed.
+     * @throws IOException If the report cannot be written.
+     */
+    public void report(Writer out) throws IOException
+    {
+        if (stats == null)
+        {
+            throw new IllegalStateException("The ensemble has not run");
+        }
+        out.write("step,species,runs,mean,sd,meanLow,meanHigh");
+        for (double q : StepStats.QUANTILES)
+        {
+            out.write(",q" + Math.round(q * 100));
+        }
+        out.write(",extinct,extinctLow,extinctHigh,coexist,coexistLow,coexistHigh\n");
+        for (StepStats step : stats)
+        {
+            if (step == null)
+            {
+                continue;
+            }
+            double[] coexist = step.getCoexistenceInterval();
+            for (byte species : RunSummary.SPECIES)
+            {
+                RunningStats population = step.getPopulation(species);
+                double[] mean = step.getMeanInterval(species);
+                double[] extinct = step.getExtinctionInterval(species);
+                StringBuilder line = new StringBuilder();
+                line.append(step.getStep()).append(',').append(Species.getName(species)).append(',').append(step.getRuns());
+                line.append(',').append((float) population.getMean()).append(',').append((float) population.getStandardDeviation());
+                line.append(',').append((float) mean[0]).append(',').append((float) mean[1]);
+                for (int q = 0; q < StepStats.QUANTILES.length; q++)
+                {
+                    line.append(',').append((float) step.getQuantile(species, q));
+                }
+                line.append(',').append((float) step.getExtinctionProbability(species));
+                line.append(',').append((float) extinct[0]).append(',').append((float) extinct[1]);
+                line.append(',').append((float) step.getCoexistenceProbability());
+                line.append(',').append((float) coexist[0]).append(',').append((float) coexist[1]);
+                line.append('\n');
+                out.write(line.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package Runner;
+
+import java.util.Arrays;
+
+import Logic.Species;
+
+/**
+ * A picture of the field after a step, handed from the simulation
+ * thread to the event dispatch thread by a FrameBuffer. A frame does
+ * not hold the whole field, only the cells that changed since the
+ * drawing side took its previous frame, with their new species. The
+ * drawing side keeps one frame and gives it back to the buffer to be
+ * filled again, so no array of the size of the field is made per step.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Frame
+{
+    private int step;
+    private final int depth, width;
+    // The indexes of the changed cells, the first changedCount are used.
+    private int[] changedCells;
+    // The new species code of every changed cell.
+    private byte[] changedSpecies;
+    private int changedCount;
+    // The population of every species code.
+    private final int[] counts;
+    // The class of every species code, null if it never occurred.
+    private final Class<?>[] speciesClasses;
+    // A readable description of the population.
+    private String details;
+    // When the frame was published, in System.nanoTime.
+    private long time;
+
+    /**
+     * Create an empty frame for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public Frame(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        changedCells = new int[64];
+        changedSpecies = new byte[64];
+        counts = new int[Species.COUNT];
+        speciesClasses = new Class<?>[Species.COUNT];
+    }
+
+    /**
+     * Forget the changed cells, before the frame is filled again.
+     */
+    void clearChanges()
+    {
+        changedCount = 0;
+    }
+
+    /**
+     * Add a changed cell.
+     * @param cell The cell index.
+     * @param species The new species code of the cell.
+     */
+    void addChange(int cell, byte species)
+    {
+        if(changedCount == changedCells.length) {
+            int length = changedCount * 2;
+            changedCells = Arrays.copyOf(changedCells, length);
+            changedSpecies = Arrays.copyOf(changedSpecies, length);
+        }
+        changedCells[changedCount] = cell;
+        changedSpecies[changedCount] = species;
+        changedCount++;
+    }
+
+    /**
+     * Set everything but the changed cells.
+     */
+    void setStatus(int step, int[] counts, Class<?>[] speciesClasses, String details, long time)
+    {
+        this.step = step;
+        System.arraycopy(counts, 0, this.counts, 0, this.counts.length);
+        System.arraycopy(speciesClasses, 0, this.speciesClasses, 0, this.speciesClasses.length);
+        this.details = details;
+        this.time = time;
+    }
+
+    /**
+     * @return The step the field was in.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The number of cells that changed since the previous frame.
+     */
+    public int getChangedCount()
+    {
+        return changedCount;
+    }
+
+    /**
+     * Return the index of a changed cell.
+     * @param i Which change, from 0 to getChangedCount() - 1.
+     * @return The cell index.
+     */
+    public int getChangedCell(int i)
+    {
+        return changedCells[i];
+    }
+
+    /**
+     * Return the new species of a changed cell.
+     * @param i Which change, from 0 to getChangedCount() - 1.
+     * @return The species code.
+     */
+    public byte getChangedSpecies(int i)
+    {
+        return changedSpecies[i];
+    }
+
+    /**
+     * Return the population of a species.
+     * @param code The species code.
+     * @return The number of occupants of that species.
+     */
+    public int getCount(byte code)
+    {
+        return counts[code];
+    }
+
+    /**
+     * Return the class seen for a species code.
+     * @param code The species code.
+     * @return The class, or null if it never occurred.
+     */
+    public Class<?> getSpeciesClass(byte code)
+    {
+        return speciesClasses[code];
+    }
+
+    /**
+     * @return A readable description of the population.
+     */
+    public String getDetails()
+    {
+        return details;
+    }
+
+    /**
+     * @return When the frame was published, in System.nanoTime.
+     */
+    public long getTime()
+    {
+        return time;
+    }
+}
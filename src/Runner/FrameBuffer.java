@@ -0,0 +1,158 @@
+package Runner;
+
+import java.util.Arrays;
+
+import Logic.Field;
+import Logic.Species;
+
+/**
+ * The hand-over between the thread that runs the simulation and the
+ * thread that draws it. The simulation publishes after every step and
+ * never waits for the drawing; the buffer only collects which cells
+ * changed since the drawing side last took a frame. When the drawing
+ * is slower, the changes of the steps it skipped are merged, so a
+ * frame holds every cell that differs from the last one drawn, each
+ * cell once, and the work on both sides is in the number of changed
+ * cells, not in the size of the field.
+ *
+ * Meant for one publishing thread at a time and one taking thread.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class FrameBuffer
+{
+    private final int depth, width;
+    // The species of every cell as last published.
+    private final byte[] species;
+    // One bit per cell that changed since the last take.
+    private final long[] changed;
+    // The indexes of those cells, in the order they first changed.
+    private int[] changedCells;
+    private int changedCount;
+    // Whether nothing was published yet.
+    private boolean first;
+    // The status of the last step published.
+    private int step;
+    private final int[] counts;
+    private final Class<?>[] speciesClasses;
+    private String details;
+    private long time;
+    // The number of frames published so far, and the number taken.
+    private long published;
+    private long taken;
+
+    /**
+     * Create a buffer for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public FrameBuffer(int depth, int width)
+    {
+        if(depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Bad field size: " + depth + "x" + width);
+        }
+        this.depth = depth;
+        this.width = width;
+        int cells = depth * width;
+        species = new byte[cells];
+        changed = new long[(cells + 63) >>> 6];
+        changedCells = new int[64];
+        counts = new int[Species.COUNT];
+        speciesClasses = new Class<?>[Species.COUNT];
+        first = true;
+    }
+
+    /**
+     * Publish the state of the field after a step. Only the cells the
+     * field marked as changed are read, and the dirty marks of the
+     * field are cleared; the first time the occupied cells are read.
+     * Must be called on the thread that runs the simulation.
+     * @param step The step the field is in.
+     * @param field The field, of the size of the buffer.
+     * @param details A description of the population.
+     */
+    public synchronized void publish(int step, Field field, String details)
+    {
+        if(field.getDepth() != depth || field.getWidth() != width) {
+            throw new IllegalArgumentException("Field is " + field.getDepth() + "x" + field.getWidth()
+                                               + ", buffer is " + depth + "x" + width);
+        }
+        if(first) {
+            // The buffer starts all empty, like the view.
+            for(int cell = field.nextOccupiedCell(0); cell >= 0; cell = field.nextOccupiedCell(cell + 1)) {
+                update(cell, field.getSpeciesAt(cell));
+            }
+            first = false;
+        }
+        else {
+            for(int cell = field.nextDirtyCell(0); cell >= 0; cell = field.nextDirtyCell(cell + 1)) {
+                update(cell, field.getSpeciesAt(cell));
+            }
+        }
+        field.clearDirty();
+        for(byte code = 1; code < Species.COUNT; code++) {
+            counts[code] = field.getCount(code);
+            speciesClasses[code] = field.getSpeciesClass(code);
+        }
+        this.step = step;
+        this.details = details;
+        time = System.nanoTime();
+        published++;
+    }
+
+    /**
+     * Record the species of a cell, and list the cell if it changed.
+     */
+    private void update(int cell, byte code)
+    {
+        if(species[cell] == code) {
+            return;
+        }
+        species[cell] = code;
+        long bit = 1L << cell;
+        if((changed[cell >>> 6] & bit) == 0) {
+            changed[cell >>> 6] |= bit;
+            if(changedCount == changedCells.length) {
+                changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+            }
+            changedCells[changedCount++] = cell;
+        }
+    }
+
+    /**
+     * Take the latest published state, with every cell that changed
+     * since the previous take. The frame given is filled again, so the
+     * caller can keep reusing one frame.
+     * @param frame The frame to fill, or null to make a new one.
+     * @return The filled frame, or null if nothing was published since
+     *         the previous take.
+     */
+    public synchronized Frame take(Frame frame)
+    {
+        if(published == taken) {
+            return null;
+        }
+        if(frame == null || frame.getDepth() != depth || frame.getWidth() != width) {
+            frame = new Frame(depth, width);
+        }
+        frame.clearChanges();
+        for(int i = 0; i < changedCount; i++) {
+            int cell = changedCells[i];
+            changed[cell >>> 6] &= ~(1L << cell);
+            frame.addChange(cell, species[cell]);
+        }
+        changedCount = 0;
+        frame.setStatus(step, counts, speciesClasses, details, time);
+        taken = published;
+        return frame;
+    }
+
+    /**
+     * @return The number of frames published so far.
+     */
+    public synchronized long getPublished()
+    {
+        return published;
+    }
+}
@@ -0,0 +1,149 @@
+package Runner;
+
+import java.util.Arrays;
+
+/**
+ * An estimate of one quantile of a series of numbers, e.g. the median,
+ * updated one number at a time with the P-square method of Jain and
+ * Chlamtac. It keeps five markers whatever the length of the series,
+ * so it can follow thousands of runs without storing them.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class QuantileEstimator
+{
+    // The number of markers.
+    private static final int MARKERS = 5;
+
+    private final double probability;
+    private long count;
+    // The heights of the markers, the first values while count < MARKERS.
+    private final double[] heights;
+    // The actual and desired positions of the markers.
+    private final long[] positions;
+    private final double[] desired;
+    // How far the desired positions move per number.
+    private final double[] increments;
+
+    /**
+     * Create an estimator without numbers.
+     * @param probability The quantile to estimate, e.g. 0.5 for the
+     *                    median; between 0 and 1.
+     */
+    public QuantileEstimator(double probability)
+    {
+        if(!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1: " + probability);
+        }
+        this.probability = probability;
+        heights = new double[MARKERS];
+        positions = new long[MARKERS];
+        desired = new double[] { 0, 2 * probability, 4 * probability, 2 + 2 * probability, 4 };
+        increments = new double[] { 0, probability / 2, probability, (1 + probability) / 2, 1 };
+        for(int i = 0; i < MARKERS; i++) {
+            positions[i] = i;
+        }
+    }
+
+    /**
+     * Add a number to the series.
+     * @param value The number.
+     */
+    public void add(double value)
+    {
+        if(count < MARKERS) {
+            heights[(int) count++] = value;
+            if(count == MARKERS) {
+                Arrays.sort(heights);
+            }
+            return;
+        }
+        count++;
+        // Find the cell the number falls in, widening the ends if needed.
+        int cell;
+        if(value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        }
+        else if(value >= heights[MARKERS - 1]) {
+            heights[MARKERS - 1] = value;
+            cell = MARKERS - 2;
+        }
+        else {
+            cell = 0;
+            while(value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for(int i = cell + 1; i < MARKERS; i++) {
+            positions[i]++;
+        }
+        for(int i = 0; i < MARKERS; i++) {
+            desired[i] += increments[i];
+        }
+        // Move the middle markers that are a whole position off.
+        for(int i = 1; i < MARKERS - 1; i++) {
+            double offset = desired[i] - positions[i];
+            if((offset >= 1 && positions[i + 1] - positions[i] > 1)
+               || (offset <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int step = offset > 0 ? 1 : -1;
+                double height = parabolic(i, step);
+                if(heights[i - 1] < height && height < heights[i + 1]) {
+                    heights[i] = height;
+                }
+                else {
+                    heights[i] += step * (heights[i + step] - heights[i]) / (positions[i + step] - positions[i]);
+                }
+                positions[i] += step;
+            }
+        }
+    }
+
+    /**
+     * The height of a marker moved one position, from the parabola
+     * through it and its neighbours.
+     */
+    private double parabolic(int i, int step)
+    {
+        double below = positions[i] - positions[i - 1];
+        double above = positions[i + 1] - positions[i];
+        return heights[i] + step / (double) (positions[i + 1] - positions[i - 1])
+            * ((below + step) * (heights[i + 1] - heights[i]) / above
+               + (above - step) * (heights[i] - heights[i - 1]) / below);
+    }
+
+    /**
+     * @return The number of numbers in the series.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return The quantile this estimator estimates.
+     */
+    public double getProbability()
+    {
+        return probability;
+    }
+
+    /**
+     * Return the estimate. While there are fewer than five numbers it is
+     * exact: the number at that rank.
+     * @return The estimated quantile, NaN if the series is empty.
+     */
+    public double getQuantile()
+    {
+        if(count == 0) {
+            return Double.NaN;
+        }
+        if(count < MARKERS) {
+            double[] first = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(first);
+            return first[(int) Math.round(probability * (count - 1))];
+        }
+        return heights[2];
+    }
+}
@@ -0,0 +1,126 @@
+package Runner;
+
+import Logic.Species;
+import Main.SimulatorListener;
+import Main.StepResult;
+
+/**
+ * A short account of one simulation run, collected while it runs: how
+ * many steps it lasted, when each species died out, and the mean and
+ * variance of every population. Nothing per step is kept, so a summary
+ * takes the same memory for any length of run.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class RunSummary implements SimulatorListener
+{
+    // The species reported on, in column order.
+    static final byte[] SPECIES = {
+        Species.RABBIT, Species.FOX, Species.BEAR, Species.HUNTER, Species.GRASS, Species.ALLESETER
+    };
+
+    private final int run;
+    private final String configuration;
+    private final long seed;
+    // The last step seen.
+    private int steps;
+    // The first step each species had no members, -1 while it has.
+    private final int[] extinct;
+    // The population of each species over the steps.
+    private final RunningStats[] populations;
+
+    /**
+     * Create an empty summary.
+     * @param run The number of the run within its sweep.
+     * @param configuration A description of the settings of the run.
+     * @param seed The master seed of the run.
+     */
+    public RunSummary(int run, String configuration, long seed)
+    {
+        this.run = run;
+        this.configuration = configuration;
+        this.seed = seed;
+        extinct = new int[Species.COUNT];
+        populations = new RunningStats[Species.COUNT];
+        for(byte species : SPECIES) {
+            extinct[species] = -1;
+            populations[species] = new RunningStats();
+        }
+    }
+
+    /**
+     * Take the populations of a step into account. The starting state
+     * after a reset counts as step 0.
+     * @param result The outcome of the step.
+     */
+    public void stepPerformed(StepResult result)
+    {
+        steps = result.getStep();
+        for(byte species : SPECIES) {
+            int count = result.getCount(species);
+            populations[species].add(count);
+            if(count == 0 && extinct[species] < 0) {
+                extinct[species] = steps;
+            }
+        }
+    }
+
+    /**
+     * @return The number of steps the run lasted.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @param species A species code.
+     * @return The first step the species had no members, or -1 if it
+     *         survived the run.
+     */
+    public int getExtinctionStep(byte species)
+    {
+        return extinct[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The population of the species over the steps of the run.
+     */
+    public RunningStats getPopulation(byte species)
+    {
+        return populations[species];
+    }
+
+    /**
+     * @return The column names of toString, separated by commas.
+     */
+    public static String header()
+    {
+        StringBuilder header = new StringBuilder("run,configuration,seed,steps");
+        for(byte species : SPECIES) {
+            String name = Species.getName(species);
+            header.append(',').append(name).append("Extinct");
+            header.append(',').append(name).append("Mean");
+            header.append(',').append(name).append("Variance");
+        }
+        return header.toString();
+    }
+
+    /**
+     * @return The summary as one line of comma separated values, in
+     *         the order of header.
+     */
+    public String toString()
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(run).append(',').append(configuration).append(',').append(seed).append(',').append(steps);
+        for(byte species : SPECIES) {
+            line.append(',').append(extinct[species]);
+            line.append(',').append((float) populations[species].getMean());
+            line.append(',').append((float) populations[species].getVariance());
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package Runner;
+
+/**
+ * The mean and variance of a series of numbers, updated one number at
+ * a time with Welford's method, so the series itself is never stored
+ * and a long series does not lose precision.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class RunningStats
+{
+    private long count;
+    private double mean;
+    // The sum of squared differences from the mean.
+    private double squares;
+    private double min = Double.NaN, max = Double.NaN;
+
+    /**
+     * Add a number to the series.
+     * @param value The number.
+     */
+    public void add(double value)
+    {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squares += delta * (value - mean);
+        if(count == 1 || value < min) {
+            min = value;
+        }
+        if(count == 1 || value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Add all numbers of another series, as if they had been added
+     * to this one.
+     * @param other The other series.
+     */
+    public void add(RunningStats other)
+    {
+        if(other.count == 0) {
+            return;
+        }
+        if(count == 0) {
+            count = other.count;
+            mean = other.mean;
+            squares = other.squares;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        squares += other.squares + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return The number of numbers in the series.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return The mean of the series, 0 if it is empty.
+     */
+    public double getMean()
+    {
+        return mean;
+    }
+
+    /**
+     * @return The sample variance of the series, 0 if it has fewer
+     *         than two numbers.
+     */
+    public double getVariance()
+    {
+        return count > 1 ? squares / (count - 1) : 0;
+    }
+
+    /**
+     * @return The sample standard deviation of the series.
+     */
+    public double getStandardDeviation()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return The smallest number, NaN if the series is empty.
+     */
+    public double getMin()
+    {
+        return min;
+    }
+
+    /**
+     * @return The largest number, NaN if the series is empty.
+     */
+    public double getMax()
+    {
+        return max;
+    }
+}
@@ -0,0 +1,181 @@
+package Runner;
+
+import Logic.Species;
+import Main.StepResult;
+
+/**
+ * What the runs of an ensemble looked like at one step: the mean,
+ * variance and quantiles of every population, how many runs had lost
+ * each species and how many still had more than one species alive.
+ * Runs add their populations as they pass the step, from any thread;
+ * the runs themselves are not kept.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class StepStats
+{
+    // The quantiles estimated for every species.
+    public static final double[] QUANTILES = { 0.05, 0.5, 0.95 };
+    // The normal quantile for 95% confidence intervals.
+    private static final double Z = 1.959964;
+
+    private final int step;
+    private int runs;
+    // The runs in which more than one species was alive.
+    private int coexisting;
+    // Per species code.
+    private final RunningStats[] populations;
+    private final QuantileEstimator[][] quantiles;
+    private final int[] extinct;
+
+    /**
+     * Create the statistics of a step, without runs.
+     * @param step The step.
+     */
+    public StepStats(int step)
+    {
+        this.step = step;
+        populations = new RunningStats[Species.COUNT];
+        quantiles = new QuantileEstimator[Species.COUNT][];
+        extinct = new int[Species.COUNT];
+        for(byte species : RunSummary.SPECIES) {
+            populations[species] = new RunningStats();
+            quantiles[species] = new QuantileEstimator[QUANTILES.length];
+            for(int q = 0; q < QUANTILES.length; q++) {
+                quantiles[species][q] = new QuantileEstimator(QUANTILES[q]);
+            }
+        }
+    }
+
+    /**
+     * Add the populations of one run at this step.
+     * @param result The outcome of the step in that run.
+     */
+    public synchronized void add(StepResult result)
+    {
+        runs++;
+        int alive = 0;
+        for(byte species = 1; species < Species.COUNT; species++) {
+            if(result.getCount(species) > 0) {
+                alive++;
+            }
+        }
+        if(alive > 1) {
+            coexisting++;
+        }
+        for(byte species : RunSummary.SPECIES) {
+            int count = result.getCount(species);
+            populations[species].add(count);
+            for(QuantileEstimator quantile : quantiles[species]) {
+                quantile.add(count);
+            }
+            if(count == 0) {
+                extinct[species]++;
+            }
+        }
+    }
+
+    /**
+     * @return The step.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The number of runs that passed the step.
+     */
+    public synchronized int getRuns()
+    {
+        return runs;
+    }
+
+    /**
+     * @param species A species code.
+     * @return The population of the species over the runs.
+     */
+    public synchronized RunningStats getPopulation(byte species)
+    {
+        return populations[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @param index The index of the quantile in QUANTILES.
+     * @return The estimated quantile of the population of the species.
+     */
+    public synchronized double getQuantile(byte species, int index)
+    {
+        return quantiles[species][index].getQuantile();
+    }
+
+    /**
+     * @param species A species code.
+     * @return A 95% confidence interval of the mean population, from
+     *         the normal approximation, as { low, high }.
+     */
+    public synchronized double[] getMeanInterval(byte species)
+    {
+        RunningStats population = populations[species];
+        double margin = runs > 1 ? Z * population.getStandardDeviation() / Math.sqrt(runs) : 0;
+        return new double[] { population.getMean() - margin, population.getMean() + margin };
+    }
+
+    /**
+     * @param species A species code.
+     * @return The share of runs in which the species had died out.
+     */
+    public synchronized double getExtinctionProbability(byte species)
+    {
+        return runs > 0 ? (double) extinct[species] / runs : 0;
+    }
+
+    /**
+     * @param species A species code.
+     * @return A 95% Wilson score interval of the extinction probability,
+     *         as { low, high }.
+     */
+    public synchronized double[] getExtinctionInterval(byte species)
+    {
+        return wilson(extinct[species], runs);
+    }
+
+    /**
+     * @return The share of runs in which more than one species was alive.
+     */
+    public synchronized double getCoexistenceProbability()
+    {
+        return runs > 0 ? (double) coexisting / runs : 0;
+    }
+
+    /**
+     * @return A 95% Wilson score interval of the coexistence
+     *         probability, as { low, high }.
+     */
+    public synchronized double[] getCoexistenceInterval()
+    {
+        return wilson(coexisting, runs);
+    }
+
+    /**
+     * The Wilson score interval of a proportion, which unlike the
+     * normal approximation stays within 0 and 1 and works when no run
+     * or every run had the outcome.
+     * @param hits The number of runs with the outcome.
+     * @param total The number of runs.
+     * @return The interval as { low, high }.
+     */
+    private static double[] wilson(int hits, int total)
+    {
+        if(total == 0) {
+            return new double[] { 0, 1 };
+        }
+        double p = (double) hits / total;
+        double z2 = Z * Z / total;
+        double centre = (p + z2 / 2) / (1 + z2);
+        double margin = Z * Math.sqrt(p * (1 - p) / total + z2 / (4 * total)) / (1 + z2);
+        return new double[] { Math.max(0, centre - margin), Math.min(1, centre + margin) };
+    }
+}
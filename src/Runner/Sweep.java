@@ -0,0 +1,173 @@
+package Runner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Main.SimulationConfig;
+
+/**
+ * A grid of simulation settings: every parameter has a list of values,
+ * and the sweep holds one configuration for every combination of
+ * values. Parameters are named as in SimulationConfig.set, e.g.
+ * foxCreationProbability or rabbit.breedingProbability.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class Sweep
+{
+    private final List<String> names;
+    private final List<double[]> values;
+
+    /**
+     * Create a sweep without parameters; it has one configuration,
+     * the default settings.
+     */
+    public Sweep()
+    {
+        names = new ArrayList<String>();
+        values = new ArrayList<double[]>();
+    }
+
+    /**
+     * Add a parameter with the given values. The check whether the
+     * name is known is done here rather than halfway through a sweep.
+     * @param name The name of the setting.
+     * @param parameterValues The values to try; at least one.
+     * @throws IllegalArgumentException If there are no values or no
+     *         such setting.
+     */
+    public void addParameter(String name, double... parameterValues)
+    {
+        if (parameterValues.length == 0)
+        {
+            throw new IllegalArgumentException("No values for " + name);
+        }
+        new SimulationConfig().set(name, parameterValues[0]);
+        names.add(name);
+        values.add(parameterValues.clone());
+    }
+
+    /**
+     * Add a parameter that goes from one value to another in equal
+     * steps, both ends included.
+     * @param name The name of the setting.
+     * @param from The first value.
+     * @param to The last value.
+     * @param step The difference between two values; greater than zero.
+     */
+    public void addRange(String name, double from, double to, double step)
+    {
+        if (step <= 0 || to < from)
+        {
+            throw new IllegalArgumentException("Invalid range for " + name + ": " + from + ":" + to + ":" + step);
+        }
+        // The small margin keeps rounding errors from dropping the last value.
+        int count = (int) Math.floor((to - from) / step + 1e-9) + 1;
+        double[] range = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            range[i] = from + i * step;
+        }
+        addParameter(name, range);
+    }
+
+    /**
+     * Add a parameter written as name=a,b,c for a list of values or
+     * name=from:to:step for a range.
+     * @param spec The parameter.
+     * @throws IllegalArgumentException If it cannot be read.
+     */
+    public void addParameter(String spec)
+    {
+        int is = spec.indexOf('=');
+        if (is <= 0)
+        {
+            throw new IllegalArgumentException("Expected name=values: " + spec);
+        }
+        String name = spec.substring(0, is);
+        String[] parts;
+        try
+        {
+            if (spec.indexOf(':', is) >= 0)
+            {
+                parts = spec.substring(is + 1).split(":");
+                if (parts.length != 3)
+                {
+                    throw new IllegalArgumentException("Expected name=from:to:step: " + spec);
+                }
+                addRange(name, Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                         Double.parseDouble(parts[2]));
+            }
+            else
+            {
+                parts = spec.substring(is + 1).split(",");
+                double[] list = new double[parts.length];
+                for (int i = 0; i < parts.length; i++)
+                {
+                    list[i] = Double.parseDouble(parts[i]);
+                }
+                addParameter(name, list);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Not a number in " + spec, e);
+        }
+    }
+
+    /**
+     * @return The number of configurations, the product of the number
+     *         of values of every parameter.
+     */
+    public int size()
+    {
+        long size = 1;
+        for (double[] parameterValues : values)
+        {
+            size *= parameterValues.length;
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IllegalStateException("Sweep has too many configurations");
+            }
+        }
+        return (int) size;
+    }
+
+    /**
+     * Create the settings of one configuration. The last parameter
+     * changes fastest from one configuration to the next.
+     * @param index The number of the configuration, from 0 to size.
+     * @return New settings with the values of that configuration.
+     */
+    public SimulationConfig configuration(int index)
+    {
+        SimulationConfig config = new SimulationConfig();
+        for (int p = names.size() - 1; p >= 0; p--)
+        {
+            double[] parameterValues = values.get(p);
+            config.set(names.get(p), parameterValues[index % parameterValues.length]);
+            index /= parameterValues.length;
+        }
+        return config;
+    }
+
+    /**
+     * Describe one configuration as name=value pairs separated by
+     * semicolons, so it fits in one column of a results file.
+     * @param index The number of the configuration.
+     * @return The description, empty if the sweep has no parameters.
+     */
+    public String describe(int index)
+    {
+        String description = "";
+        for (int p = names.size() - 1; p >= 0; p--)
+        {
+            double[] parameterValues = values.get(p);
+            String pair = names.get(p) + "=" + (float) parameterValues[index % parameterValues.length];
+            description = description.isEmpty() ? pair : pair + ";" + description;
+            index /= parameterValues.length;
+        }
+        return description;
+    }
+}
@@ -0,0 +1,153 @@
+package Runner;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Compares the worker pool of a SweepRunner with virtual threads: the
+ * same sweep is run both ways into a results sink that takes a while
+ * for every line, like a slow disk or network share, and the runs per
+ * second and the heap taken per simulating run are reported.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class SweepBenchmark
+{
+    // How often the heap is looked at during a sweep, in milliseconds.
+    private static final long SAMPLE_MILLIS = 5;
+
+    private final int runs;
+    private final int steps;
+    private final long sinkMillis;
+    private int depth = 40, width = 60;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Create a benchmark of small runs on a 40 by 60 field.
+     * @param runs The number of runs per sweep.
+     * @param steps The steps per run.
+     * @param sinkMillis How long writing one summary takes, in milliseconds.
+     */
+    public SweepBenchmark(int runs, int steps, long sinkMillis)
+    {
+        this.runs = runs;
+        this.steps = steps;
+        this.sinkMillis = sinkMillis;
+    }
+
+    /**
+     * @param threads The number of runs that simulate at once.
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Run the sweep on the pool and, if the runtime has them, on
+     * virtual threads, and return a line about each.
+     * @return The report.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    public String run() throws InterruptedException
+    {
+        String report = measure(false);
+        if (VirtualThreads.isAvailable())
+        {
+            report += "\n" + measure(true);
+        }
+        else
+        {
+            report += "\nvirtual threads: not available on Java " + System.getProperty("java.version");
+        }
+        return report;
+    }
+
+    /**
+     * Run the sweep once and describe its throughput and memory use.
+     * @param virtual true to use virtual threads.
+     * @return A line about the sweep.
+     */
+    private String measure(boolean virtual) throws InterruptedException
+    {
+        SweepRunner runner = new SweepRunner(new Sweep(), runs);
+        runner.setSteps(steps);
+        runner.setFieldSize(depth, width);
+        runner.setThreads(threads);
+        runner.useVirtualThreads(virtual);
+
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        final long baseline = runtime.totalMemory() - runtime.freeMemory();
+        final long[] peak = { baseline };
+        // Looks at the heap until it is interrupted; join makes its peak visible.
+        Thread sampler = new Thread("heap-sampler") {
+            public void run()
+            {
+                while (!isInterrupted())
+                {
+                    peak[0] = Math.max(peak[0], runtime.totalMemory() - runtime.freeMemory());
+                    try
+                    {
+                        Thread.sleep(SAMPLE_MILLIS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+
+        long start = System.nanoTime();
+        try
+        {
+            runner.run(slowSink());
+        }
+        catch (IOException e)
+        {
+            // The sink never fails.
+            throw new IllegalStateException(e);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+        return String.format("%s: %d runs in %.2f s, %.1f runs/s, peak heap +%.1f MB, %.0f KB per simulating run",
+                             virtual ? "virtual threads" : "fixed pool", runner.getRunsDone(), seconds,
+                             runner.getRunsDone() / seconds, (peak[0] - baseline) / 1e6,
+                             (peak[0] - baseline) / 1e3 / threads);
+    }
+
+    /**
+     * @return A writer that discards what it is given and blocks for a
+     *         while on every flush, that is on every summary.
+     */
+    private Writer slowSink()
+    {
+        return new Writer() {
+            public void write(char[] buffer, int offset, int length)
+            {
+            }
+
+            public void flush() throws IOException
+            {
+                try
+                {
+                    Thread.sleep(sinkMillis);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing", e);
+                }
+            }
+
+            public void close()
+            {
+            }
+        };
+    }
+}
@@ -0,0 +1,290 @@
+package Runner;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Logic.Field;
+import Main.Simulator;
+import Main.StepResult;
+
+/**
+ * Runs every configuration of a sweep with a number of seeds, each run
+ * a headless simulator of its own, on a fixed number of worker threads.
+ * The summary of every run is written to the results as soon as the
+ * run ends, so the results of a long sweep can be followed while it
+ * runs and nothing but the running simulators is kept in memory.
+ *
+ * Every configuration is run with the same seeds, so differences
+ * between configurations are not hidden by differences in luck. The
+ * summaries are written in the order the runs end; the run number in
+ * the first column gives the order of the sweep.
+ *
+ * On Java 21 or later the runs can instead each get a virtual thread,
+ * with a semaphore allowing only as many of them to simulate at once
+ * as there are workers. A run then writes its summary on its own
+ * thread after giving up its turn, so a slow results file keeps no
+ * core idle, and thousands of runs can wait cheaply.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public class SweepRunner
+{
+    // The default length of a run, in steps.
+    private static final int DEFAULT_STEPS = 1000;
+    // The most virtual threads that wait for a turn to simulate.
+    private static final int MAX_WAITING = 4096;
+
+    private final Sweep sweep;
+    private final int seeds;
+    private int steps;
+    private long baseSeed;
+    private int depth, width;
+    private int threads;
+    // Whether every run gets a virtual thread of its own.
+    private boolean virtualThreads;
+    // The number of runs done in the current or last sweep.
+    private final AtomicInteger runsDone;
+
+    /**
+     * Create a runner with the default settings: runs of 1000 steps
+     * on a field of the default size, one worker thread per core.
+     * @param sweep The configurations to run.
+     * @param seeds The number of seeds per configuration; at least one.
+     */
+    public SweepRunner(Sweep sweep, int seeds)
+    {
+        if (seeds <= 0)
+        {
+            throw new IllegalArgumentException("Number of seeds must be greater than zero: " + seeds);
+        }
+        this.sweep = sweep;
+        this.seeds = seeds;
+        steps = DEFAULT_STEPS;
+        depth = Simulator.DEFAULT_DEPTH;
+        width = Simulator.DEFAULT_WIDTH;
+        threads = Runtime.getRuntime().availableProcessors();
+        runsDone = new AtomicInteger();
+    }
+
+    /**
+     * @param steps The most steps a run takes; a run also ends when
+     *              the simulation is no longer viable.
+     */
+    public void setSteps(int steps)
+    {
+        if (steps < 0)
+        {
+            throw new IllegalArgumentException("Number of steps must not be negative: " + steps);
+        }
+        this.steps = steps;
+    }
+
+    /**
+     * @param baseSeed The seed of the first run of every configuration;
+     *                 the others use the seeds that follow it.
+     */
+    public void setBaseSeed(long baseSeed)
+    {
+        this.baseSeed = baseSeed;
+    }
+
+    /**
+     * Choose the size of the field of every run.
+     * @param depth The depth of the field; greater than zero.
+     * @param width The width of the field; greater than zero.
+     */
+    public void setFieldSize(int depth, int width)
+    {
+        Field.checkSize(depth, width);
+        this.depth = depth;
+        this.width = width;
+    }
+
+    /**
+     * @param threads The number of worker threads; at least one.
+     */
+    public void setThreads(int threads)
+    {
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("Number of threads must be greater than zero: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Give every run a virtual thread of its own instead of a place on
+     * the worker pool; the number of threads then limits how many runs
+     * simulate at once. Without virtual threads in the runtime the
+     * pool stays in use.
+     * @param use true to use virtual threads.
+     * @return true if virtual threads will be used.
+     */
+    public boolean useVirtualThreads(boolean use)
+    {
+        virtualThreads = use && VirtualThreads.isAvailable();
+        return virtualThreads;
+    }
+
+    /**
+     * @return The number of runs in the sweep.
+     */
+    public long getRuns()
+    {
+        return (long) sweep.size() * seeds;
+    }
+
+    /**
+     * @return The number of runs done so far in the current or last sweep.
+     */
+    public int getRunsDone()
+    {
+        return runsDone.get();
+    }
+
+    /**
+     * Perform all runs and write a header and one summary line per run.
+     * Returns when every run has ended. If a run fails, no new runs are
+     * started and the failure is thrown once the running ones have ended.
+     * @param results Where the summaries go; it is flushed after every
+     *                line, but not closed.
+     * @return The number of runs performed.
+     * @throws IOException If the results cannot be written.
+     * @throws InterruptedException If the thread is interrupted while
+     *         waiting for the runs.
+     */
+    public int run(final Writer results) throws IOException, InterruptedException
+    {
+        if (getRuns() > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Sweep has too many runs: " + getRuns());
+        }
+        runsDone.set(0);
+        results.write(RunSummary.header());
+        results.write('\n');
+        results.flush();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        // The runs that may simulate at the same time, one per worker.
+        final Semaphore cpu = new Semaphore(threads);
+        // The runs that may be handed out and not yet ended, so a long
+        // sweep never holds a task or a thread per run.
+        final Semaphore slots = new Semaphore(virtualThreads ? threads + MAX_WAITING : 3 * threads);
+        // A lock rather than synchronized, which would pin a virtual
+        // thread to its carrier while it writes.
+        final Lock writing = new ReentrantLock();
+        ExecutorService executor = virtualThreads ? VirtualThreads.newExecutor()
+            : Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count;
+
+                public synchronized Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "sweep-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        int runs = (int) getRuns();
+        try
+        {
+            for (int run = 0; run < runs && failure.get() == null; run++)
+            {
+                final int number = run;
+                slots.acquire();
+                executor.execute(new Runnable() {
+                    public void run()
+                    {
+                        try
+                        {
+                            if (failure.get() != null)
+                            {
+                                return;
+                            }
+                            RunSummary summary;
+                            cpu.acquire();
+                            try
+                            {
+                                summary = runOne(number);
+                            }
+                            finally
+                            {
+                                cpu.release();
+                            }
+                            // The summary is written without holding a cpu permit,
+                            // so a slow sink does not keep other runs waiting.
+                            writing.lock();
+                            try
+                            {
+                                results.write(summary.toString());
+                                results.write('\n');
+                                results.flush();
+                            }
+                            finally
+                            {
+                                writing.unlock();
+                            }
+                            runsDone.incrementAndGet();
+                        }
+                        catch (Throwable t)
+                        {
+                            failure.compareAndSet(null, t);
+                        }
+                        finally
+                        {
+                            slots.release();
+                        }
+                    }
+                });
+            }
+        }
+        catch (InterruptedException e)
+        {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        Throwable t = failure.get();
+        if (t instanceof IOException)
+        {
+            throw (IOException) t;
+        }
+        if (t != null)
+        {
+            throw new IllegalStateException("A run of the sweep failed", t);
+        }
+        return runsDone.get();
+    }
+
+    /**
+     * Perform one run of the sweep on the current thread.
+     * @param run The number of the run: the configuration times the
+     *            number of seeds, plus the seed.
+     * @return The summary of the run.
+     */
+    public RunSummary runOne(int run)
+    {
+        int configuration = run / seeds;
+        long seed = baseSeed + run % seeds;
+        Simulator simulator = new Simulator(depth, width, false, sweep.configuration(configuration), seed);
+        RunSummary summary = new RunSummary(run, sweep.describe(configuration), seed);
+        simulator.addListener(summary);
+        // The starting state was shown before the listener was added.
+        summary.stepPerformed(new StepResult(0, simulator.getField()));
+        simulator.simulate(steps);
+        return summary;
+    }
+}
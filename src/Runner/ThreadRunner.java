@@ -1,88 +1,421 @@
 package Runner;
 
-import Main.Main;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import Main.Simulator;
 /**
  * De klasse ThreadRunner
  * 
+ * Runs the simulation on one scheduler thread, in one of three modes:
+ * a fixed number of steps per second, as fast as possible, or a given
+ * number of steps after which it stops. Commands may come from any
+ * thread; they are handed to the scheduler thread, which is the only
+ * one that changes the run state, so they never race with a step.
+ *
+ * In fixed-rate mode every step is due one period after the previous
+ * due time, not after the previous step finished, so the time a step
+ * takes does not add up to drift. After a long stall the schedule
+ * starts afresh instead of catching up with a burst of steps.
+ *
  * @author 
  * @version 
  */
-public class ThreadRunner implements Runnable
+public class ThreadRunner
 {	
+	// Steps run back to back in max-throughput mode before queued commands get a turn.
+	private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+	// How many periods a fixed-rate run may fall behind before it skips ahead.
+	private static final int MAX_PERIODS_BEHIND = 5;
+	// Remaining steps of a run without an end.
+	private static final long INFINITE = Long.MAX_VALUE;
 	
-	private int numSteps = 0;
-	private boolean infinite = false;
-	private boolean threadRun;
+	// The simulation this runner steps.
+	private final Simulator simulator;
+	// The thread that steps the simulation.
+	private final ScheduledExecutorService scheduler;
+	// The task that performs one or more steps.
+	private final Runnable tick;
+
+	// The run state; only changed on the scheduler thread.
+	private volatile boolean running;
+	private long remaining;
+	// Nanoseconds per step, 0 for max throughput.
+	private long period;
+	// When the next fixed-rate step is due, in System.nanoTime.
+	private long nextDue;
+	private ScheduledFuture<?> pending;
+
+	// Measurements of the current run, written by the scheduler thread.
+	private volatile long runStart;
+	private volatile long runEnd;
+	private volatile long stepsDone;
+	private volatile long lastStepNanos;
+	private volatile long totalStepNanos;
+	private volatile long maxStepNanos;
+	private volatile long totalLagNanos;
+	private volatile long maxLagNanos;
+	// What made the last run stop by itself, null if nothing did.
+	private volatile Throwable failure;
 	
 	
 	/**
-	 * leeg constructor
+	 * Create a runner for one simulation.
+	 * @param simulator The simulation to run.
 	 */
-	public ThreadRunner() 
+	public ThreadRunner(Simulator simulator)
 	{
+		this.simulator = simulator;
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "simulation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		tick = new Runnable() {
+			public void run()
+			{
+				tick();
+			}
+		};
 	}
 	
     /**
      * Run the simulation from its current state for a reasonably long period
+     * at the animation speed of the simulator: one step per that many
+     * milliseconds, or as fast as possible if it is 0.
+     * @param numSteps The number of steps to add to the run, 0 to run
+     *                 until stopped.
      */
-    public void startRun(int numSteps)
+    public void startRun(final int numSteps)
     {
-    	if (numSteps == 0)
+    	command(new Runnable() {
+    		public void run()
+    		{
+    			long speed = simulator.getAnimationSpeed();
+    			if (numSteps == 0)
+    			{
+    				start(INFINITE, TimeUnit.MILLISECONDS.toNanos(speed));
+    			}
+    			else
+    			{
+    				long steps = running && remaining != INFINITE ? remaining + numSteps : numSteps;
+    				start(steps, TimeUnit.MILLISECONDS.toNanos(speed));
+    			}
+    		}
+    	});
+	}
+
+    /**
+     * Run until stopped at a target number of steps per second.
+     * @param stepsPerSecond The target rate; must be greater than zero.
+     */
+    public void runFixedRate(final double stepsPerSecond)
+    {
+    	if (stepsPerSecond <= 0)
     	{
-    		this.numSteps = 1;
-    		infinite = true;
+    		throw new IllegalArgumentException("Steps per second must be greater than zero: " + stepsPerSecond);
     	}
-    	else
+    	command(new Runnable() {
+    		public void run()
+    		{
+    			start(INFINITE, (long) (1e9 / stepsPerSecond));
+    		}
+    	});
+    }
+
+    /**
+     * Run until stopped as fast as the simulation allows.
+     */
+    public void runMaxThroughput()
+    {
+    	command(new Runnable() {
+    		public void run()
+    		{
+    			start(INFINITE, 0);
+    		}
+    	});
+    }
+
+    /**
+     * Run the given number of steps as fast as possible and stop.
+     * @param numSteps The number of steps; must be greater than zero.
+     */
+    public void runSteps(final int numSteps)
+    {
+    	if (numSteps <= 0)
     	{
-    		this.numSteps += numSteps;	
+    		throw new IllegalArgumentException("Number of steps must be greater than zero: " + numSteps);
     	}
-    	
-//    	try{
-    		if (!threadRun && Thread.currentThread().isAlive())
+    	command(new Runnable() {
+    		public void run()
     		{
-    			new Thread(this).start();
+    			start(numSteps, 0);
     		}
-	}
+    	});
+    }
 
     /**
      * Pauzeert de simulatie.
      */
 	public void stop() 
 	{
-		numSteps = 0;
-		threadRun = false;
-		infinite = false;
+		command(new Runnable() {
+			public void run()
+			{
+				halt();
+			}
+		});
 	}
 	
 	/**
-	 * Deze methode wordt alleen uitgevoerd als je de methode .start() gebruikt van de klasse Thread.
-	 * Zonder de klasse (thread), wordt deze methode niet juist uitgevoerd.
-	 * De methode zorgt ervoor dat de thread door het aantal numSteps heen loopt.
+	 * Stop the run and reset the simulation to its starting state. The
+	 * reset happens on the scheduler thread, so it never overlaps a step.
 	 */
-	@Override
-	public void run() 
+	public void reset()
 	{
-		threadRun = true;
-		Simulator simulator = Main.getSimulator();
+		command(new Runnable() {
+			public void run()
+			{
+				halt();
+				simulator.reset();
+			}
+		});
+	}
 		
-		while(threadRun && numSteps > 0 && simulator.getSimulatorView().isViable(simulator.getField()))
+	/**
+	 * @return The simulation this runner steps.
+	 */
+	public Simulator getSimulator()
+	{
+		return simulator;
+	}
+
+	/**
+	 * Stop the run and the scheduler thread for good.
+	 */
+	public void shutdown()
+	{
+		stop();
+		scheduler.shutdown();
+	}
+
+	/**
+	 * @return true if a run is going on.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	/**
+	 * @return The number of steps done in the current or last run.
+	 */
+	public long getStepsDone()
+	{
+		return stepsDone;
+	}
+
+	/**
+	 * @return The steps per second of the current or last run.
+	 */
+	public double getThroughput()
+	{
+		long elapsed = (running ? System.nanoTime() : runEnd) - runStart;
+		return elapsed > 0 ? stepsDone * 1e9 / elapsed : 0;
+	}
+
+	/**
+	 * @return The time the last step took, in nanoseconds.
+	 */
+	public long getLastStepNanos()
+	{
+		return lastStepNanos;
+	}
+
+	/**
+	 * @return The average time a step took in this run, in nanoseconds.
+	 */
+	public long getAverageStepNanos()
+	{
+		long steps = stepsDone;
+		return steps > 0 ? totalStepNanos / steps : 0;
+	}
+
+	/**
+	 * @return The longest time a step took in this run, in nanoseconds.
+	 */
+	public long getMaxStepNanos()
+	{
+		return maxStepNanos;
+	}
+
+	/**
+	 * @return The average time fixed-rate steps started after they were
+	 *         due in this run, in nanoseconds.
+	 */
+	public long getAverageLagNanos()
+	{
+		long steps = stepsDone;
+		return steps > 0 ? totalLagNanos / steps : 0;
+	}
+
+	/**
+	 * @return What a step threw in the current or last run, which then
+	 *         stopped, or null if no step failed.
+	 */
+	public Throwable getFailure()
+	{
+		return failure;
+	}
+
+	/**
+	 * @return A one line report of the throughput and latency of this run.
+	 */
+	public String getReport()
+	{
+		return String.format("%d steps, %.1f steps/s, step %.2f ms avg %.2f ms max, lag %.2f ms avg %.2f ms max",
+				stepsDone, getThroughput(), getAverageStepNanos() / 1e6, maxStepNanos / 1e6,
+				getAverageLagNanos() / 1e6, maxLagNanos / 1e6);
+	}
+
+	/**
+	 * Hand a command to the scheduler thread.
+	 * @param command The command.
+	 */
+	private void command(Runnable command)
+	{
+		scheduler.execute(command);
+	}
+
+	/**
+	 * Start or change the run. Scheduler thread only.
+	 * @param steps The number of steps to run, or INFINITE.
+	 * @param stepPeriod Nanoseconds per step, 0 for max throughput.
+	 */
+	private void start(long steps, long stepPeriod)
+	{
+		if (!running)
 		{
-			Main.getSimulator().simulateOneStep();
-			numSteps--;
-			while(infinite && numSteps == 0)
+			runStart = System.nanoTime();
+			failure = null;
+			stepsDone = 0;
+			totalStepNanos = 0;
+			maxStepNanos = 0;
+			totalLagNanos = 0;
+			maxLagNanos = 0;
+		}
+		running = true;
+		remaining = steps;
+		period = stepPeriod;
+		reschedule(System.nanoTime());
+	}
+
+	/**
+	 * End the run. Scheduler thread only.
+	 */
+	private void halt()
+	{
+		if (running)
+		{
+			runEnd = System.nanoTime();
+		}
+		running = false;
+		remaining = 0;
+		if (pending != null)
+		{
+			pending.cancel(false);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Replace the pending tick by one that is due at the given time.
+	 * @param due When the next step is due, in System.nanoTime.
+	 */
+	private void reschedule(long due)
+	{
+		if (pending != null)
+		{
+			pending.cancel(false);
+		}
+		nextDue = due;
+		pending = scheduler.schedule(tick, Math.max(0, due - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Perform the steps that are due: one in fixed-rate mode, or a
+	 * batch in max-throughput mode, then schedule the next tick. A
+	 * step that throws ends the run. Scheduler thread only.
+	 */
+	private void tick()
+	{
+		pending = null;
+		if (!running)
+		{
+			return;
+		}
+		long batchEnd = System.nanoTime() + BATCH_NANOS;
+		do
+		{
+			if (remaining == 0 || !simulator.isViable())
 			{
-				numSteps++;
+				halt();
+				return;
 			}
-			
-			try {
-				Thread.sleep(simulator.getAnimationSpeed());
+			long start = System.nanoTime();
+			if (period > 0)
+			{
+				long lag = Math.max(0, start - nextDue);
+				totalLagNanos += lag;
+				maxLagNanos = Math.max(maxLagNanos, lag);
 			} 
-			catch (Exception e) 
+			try
+			{
+				simulator.simulateOneStep();
+			}
+			catch (Throwable t)
+			{
+				// A task that throws is never run again, so without
+				// this the run would seem to go on without stepping.
+				failure = t;
+				halt();
+				return;
+			}
+			long took = System.nanoTime() - start;
+			lastStepNanos = took;
+			totalStepNanos += took;
+			maxStepNanos = Math.max(maxStepNanos, took);
+			stepsDone++;
+			if (remaining != INFINITE)
+			{
+				remaining--;
+			}
+		}
+		while (period == 0 && remaining != 0 && System.nanoTime() < batchEnd);
+
+		if (remaining == 0)
+		{
+			halt();
+		}
+		else if (period == 0)
+		{
+			reschedule(System.nanoTime());
+		}
+		else
+		{
+			long due = nextDue + period;
+			long now = System.nanoTime();
+			if (now - due > MAX_PERIODS_BEHIND * period)
 			{
-            	System.out.println("InterruptedException");
+				due = now;
 			}
+			reschedule(due);
 		}
-		threadRun = false;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package Runner;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of Java 21 and later. The project is
+ * built for Java 8, so the executor is looked up by reflection; on an
+ * older runtime there are no virtual threads and callers fall back to
+ * platform threads.
+ *
+ * @author Caroline
+ * @version 1.0
+ */
+public final class VirtualThreads
+{
+    // Executors.newVirtualThreadPerTaskExecutor, or null if the runtime has none.
+    private static final Method NEW_EXECUTOR = findExecutorFactory();
+
+    /**
+     * No instances.
+     */
+    private VirtualThreads()
+    {
+    }
+
+    /**
+     * @return The factory method, or null on a runtime without virtual threads.
+     */
+    private static Method findExecutorFactory()
+    {
+        try
+        {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the runtime has virtual threads.
+     */
+    public static boolean isAvailable()
+    {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor that runs every task on a new virtual thread.
+     * @return The executor.
+     * @throws IllegalStateException If the runtime has no virtual threads.
+     */
+    public static ExecutorService newExecutor()
+    {
+        if (NEW_EXECUTOR == null)
+        {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running on "
+                                            + System.getProperty("java.version"));
+        }
+        try
+        {
+            return (ExecutorService) NEW_EXECUTOR.invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Cannot create a virtual thread executor", e);
+        }
+    }
+}
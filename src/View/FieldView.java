@@ -3,15 +3,25 @@ package View;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 import javax.swing.JPanel;
 
+import Logic.Species;
+import Runner.Frame;
+
 /**
  * Provide a graphical view of a rectangular field. This is a nested class
  * (a class defined inside a class) which defines a custom component for the
  * user interface. This component displays the field. This is rather
  * advanced GUI stuff - you can ignore this for your project if you like.
+ * 
+ * The field is drawn into an image with one pixel per cell, by writing
+ * the colour of each species straight into the int[] behind the image.
+ * Only paintComponent scales that image up to the size of the panel.
+ * After the first frame only the cells a frame lists as changed are
+ * drawn again, and only the part of the panel around them is repainted.
  */
 public class FieldView extends JPanel {
 	
@@ -20,10 +30,17 @@ public class FieldView extends JPanel {
 	private final int GRID_VIEW_SCALING_FACTOR = 6;
 
 	private int gridWidth, gridHeight;
-	private int xScale, yScale;
-	Dimension size;
-	private Graphics g;
-	private Image fieldImage;
+	// One pixel per cell, in the same order as the cell indexes.
+	private BufferedImage fieldImage;
+	// The pixels of fieldImage.
+	private int[] pixels;
+	// The RGB colour of every species code.
+	private int[] palette;
+	// Whether every cell must be drawn again, e.g. for a new colour.
+	private boolean fullRender;
+	// The species code of every cell as drawn now, to draw again
+	// after a colour change.
+	private byte[] species;
 
 	
 	/**
@@ -32,7 +49,11 @@ public class FieldView extends JPanel {
 	public FieldView(int height, int width) {
 		gridHeight = height;
 		gridWidth = width;
-		size = new Dimension(0, 0);
+		fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+		palette = new int[Species.COUNT];
+		species = new byte[width * height];
+		fullRender = true;
 	}
 
 	/**
@@ -44,48 +65,92 @@ public class FieldView extends JPanel {
 	}
 
 	/**
-	 * Prepare for a new round of painting. Since the component may be
-	 * resized, compute the scaling factor again.
+	 * Set the colour in which cells of a species are drawn.
+	 * @param species The species code.
+	 * @param color The colour to use.
 	 */
-	public void preparePaint() {
-		if (!size.equals(getSize())) { // if the size has changed...
-			size = getSize();
-			fieldImage = createImage(size.width, size.height);
-			g = fieldImage.getGraphics();
+	public void setSpeciesColor(byte species, Color color) {
+		int rgb = color.getRGB();
+		if (palette[species] != rgb) {
+			palette[species] = rgb;
+			fullRender = true;
+		}
+	}
 
-			xScale = size.width / gridWidth;
-			if (xScale < 1) {
-				xScale = GRID_VIEW_SCALING_FACTOR;
+	/**
+	 * Draw a frame of the field. Only the cells the frame lists as
+	 * changed are written, and only the part of the panel covering them
+	 * is repainted. After a colour change every cell is drawn again.
+	 * @param frame The frame; it must have the size of the view.
+	 */
+	public void render(Frame frame) {
+		int changes = frame.getChangedCount();
+		if (fullRender) {
+			for (int i = 0; i < changes; i++) {
+				species[frame.getChangedCell(i)] = frame.getChangedSpecies(i);
+			}
+			for (int index = 0; index < species.length; index++) {
+				pixels[index] = palette[species[index]];
+			}
+			fullRender = false;
+			repaint();
+			return;
+		}
+		// Cells next to each other in the list and in a row are
+		// repainted together.
+		int row = -1, firstCol = 0, lastCol = 0;
+		for (int i = 0; i < changes; i++) {
+			int index = frame.getChangedCell(i);
+			byte code = frame.getChangedSpecies(i);
+			species[index] = code;
+			pixels[index] = palette[code];
+			int cellRow = index / gridWidth;
+			int col = index - cellRow * gridWidth;
+			if (cellRow == row && col == lastCol + 1) {
+				lastCol = col;
 			}
-			yScale = size.height / gridHeight;
-			if (yScale < 1) {
-				yScale = GRID_VIEW_SCALING_FACTOR;
+			else {
+				if (row >= 0) {
+					repaintCells(row, firstCol, lastCol);
+				}
+				row = cellRow;
+				firstCol = lastCol = col;
 			}
 		}
+		if (row >= 0) {
+			repaintCells(row, firstCol, lastCol);
+		}
+	}
+
+	/**
+	 * Repaint the part of the panel that shows some cells of a row.
+	 * @param row The row.
+	 * @param firstCol The first column to repaint.
+	 * @param lastCol The last column to repaint.
+	 */
+	private void repaintCells(int row, int firstCol, int lastCol) {
+		Dimension currentSize = getSize();
+		int x = (int) ((long) firstCol * currentSize.width / gridWidth);
+		int y = (int) ((long) row * currentSize.height / gridHeight);
+		int x2 = (int) (((long) (lastCol + 1) * currentSize.width + gridWidth - 1) / gridWidth);
+		int y2 = (int) (((long) (row + 1) * currentSize.height + gridHeight - 1) / gridHeight);
+		repaint(x, y, x2 - x, y2 - y);
 	}
 
 	/**
 	 * Paint on grid location on this field in a given color.
 	 */
 	public void drawMark(int x, int y, Color color) {
-		g.setColor(color);
-		g.fillRect(x * xScale, y * yScale, xScale - 1, yScale - 1);
+		pixels[y * gridWidth + x] = color.getRGB();
 	}
 
 	/**
-	 * The field view component needs to be redisplayed. Copy the internal
-	 * image to screen.
+	 * The field view component needs to be redisplayed. Scale the
+	 * internal image to the size of the panel.
 	 */
 	public void paintComponent(Graphics g) {
-		if (fieldImage != null) {
-			Dimension currentSize = getSize();
-			if (size.equals(currentSize)) {
-				g.drawImage(fieldImage, 0, 0, null);
-			} else {
-				// Rescale the previous image.
-				g.drawImage(fieldImage, 0, 0, currentSize.width,
-						currentSize.height, null);
-			}
-		}
+		Dimension currentSize = getSize();
+		g.drawImage(fieldImage, 0, 0, currentSize.width,
+				currentSize.height, null);
 	}
-}
\ No newline at end of file
+}
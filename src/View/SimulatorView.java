@@ -7,16 +7,18 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.text.DefaultCaret;
 
+import Runner.Frame;
+import Runner.FrameBuffer;
 import Runner.ThreadRunner;
 import Logic.Counter;
 import Logic.Field;
 import Logic.FieldStats;
-import Main.Main;
+import Logic.Species;
+import Main.SimulationConfig;
 import Main.Simulator;
-import Model.Bear;
-import Model.Fox;
-import Model.Rabbit;
-import Model.AllesEter;
+import Main.SimulatorListener;
+import Main.StepResult;
+import Model.SpeciesConfig;
 
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -29,10 +31,17 @@ import java.util.Map;
  * Colors for each type of species can be defined using the
  * setColor method.
  * 
+ * The simulation thread only publishes the changed cells of the field
+ * in a FrameBuffer after each step. A Swing timer on the event
+ * dispatch thread takes a Frame with all changes since the last one
+ * at most MAX_FPS times per second and draws those cells, so the
+ * simulation never waits for painting and Swing is only touched on
+ * its own thread.
+ * 
  * @author Caroline
  * @version 1.0
  */
-public class SimulatorView extends JFrame
+public class SimulatorView extends JFrame implements SimulatorListener
 {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
@@ -40,7 +49,7 @@ public class SimulatorView extends JFrame
     private JFrame frame;
     private JTabbedPane tabbedpane;
     private JPanel jpanel;
-    private static Simulator simulator;
+    private final Simulator simulator;
 	private ThreadRunner threadRunner;
 	private boolean isReset;
 	
@@ -54,6 +63,13 @@ public class SimulatorView extends JFrame
 	
     // Color used for objects that have no defined color.
     private static final Color UNKNOWN_COLOR = Color.gray;
+    // The most frames per second that are drawn.
+    private static final int MAX_FPS = 30;
+    // How often the step and frame rates are worked out, in nanoseconds.
+    private static final long RATE_INTERVAL = 1000000000L;
+    // The system property that turns on the check of the population
+    // counters from the start, e.g. -Dvossen.debugCounts=true.
+    public static final String DEBUG_COUNTS_PROPERTY = "vossen.debugCounts";
 
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
@@ -65,18 +81,36 @@ public class SimulatorView extends JFrame
     private Map<Class, Color> colors;
     // A statistics object computing and storing simulation information
     private FieldStats stats;   
+    // The changes published by the simulation thread.
+    private FrameBuffer frames;
+    // The last frame drawn, filled again for the next one.
+    private Frame shownFrame;
+    // Draws the latest frame on the event dispatch thread.
+    private javax.swing.Timer renderTimer;
+    // The failure of the runner that was last shown to the user.
+    private Throwable shownFailure;
+    // The start, step and drawn frames of the current rate interval.
+    private long rateStart;
+    private int rateStep;
+    private int rateFrames;
+    // The rates of the last interval.
+    private double stepsPerSecond, framesPerSecond;
 
     /**
      * Create a view of the given width and height.
+     * @param simulator The simulation this view shows and controls.
      * @param height The simulation's height.
      * @param width  The simulation's width.
      */
-    public SimulatorView(int height, int width)
+    public SimulatorView(Simulator simulator, int height, int width)
     {
+        this.simulator = simulator;
     	frame = new JFrame("Vossen en konijnen");
         stats = new FieldStats();
+        stats.setDebug(Boolean.getBoolean(DEBUG_COUNTS_PROPERTY));
         colors = new LinkedHashMap<Class, Color>();      
-        threadRunner = new ThreadRunner();       
+        threadRunner = new ThreadRunner(simulator);       
+        frames = new FrameBuffer(height, width);
         
         //Making the left menu with buttons
         JPanel leftMenu = new JPanel();
@@ -120,7 +154,7 @@ public class SimulatorView extends JFrame
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(new ActionListener() {
         	public void actionPerformed(ActionEvent e) {
-        		Main.getSimulator().reset();
+        		threadRunner.reset();
         	}
         });
         
@@ -173,6 +207,14 @@ public class SimulatorView extends JFrame
         //Showing the results
         frame.setVisible(true);
         
+        //Drawing the frames the simulation publishes
+        rateStart = System.nanoTime();
+        renderTimer = new javax.swing.Timer(1000 / MAX_FPS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                renderLatestFrame();
+            }
+        });
+        renderTimer.start();
     }
     
     /**
@@ -202,7 +244,15 @@ public class SimulatorView extends JFrame
 				settingsFrame.setVisible(true);
     		}
     	});
+    	final JCheckBoxMenuItem checkCounts = new JCheckBoxMenuItem("Check counts",
+    			Boolean.getBoolean(DEBUG_COUNTS_PROPERTY));
+    	checkCounts.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			setDebugCounts(checkCounts.isSelected());
+    		}
+    	});
     	menu1.add(menuItem4);
+    	menu1.add(checkCounts);
     	menu1.add(menuItem);
     	menu.add(menu1);
     	
@@ -224,6 +274,44 @@ public class SimulatorView extends JFrame
     	menu2.add(menu2Item3);
     	menu.add(menu2);
     	
+    	//Menu number 3, the run modes of the thread runner.
+    	JMenu menu3 = new JMenu("Run");
+    	JMenuItem menu3Item1 = new JMenuItem("Steps per second...");
+    	menu3Item1.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			Double rate = askNumber("Steps per second:");
+    			if (rate != null && rate > 0) {
+    				threadRunner.runFixedRate(rate);
+    			}
+    		}
+    	});
+    	JMenuItem menu3Item2 = new JMenuItem("As fast as possible");
+    	menu3Item2.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			threadRunner.runMaxThroughput();
+    		}
+    	});
+    	JMenuItem menu3Item3 = new JMenuItem("Steps as fast as possible...");
+    	menu3Item3.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			Double steps = askNumber("Number of steps:");
+    			if (steps != null && steps >= 1 && steps <= Integer.MAX_VALUE) {
+    				threadRunner.runSteps(steps.intValue());
+    			}
+    		}
+    	});
+    	JMenuItem menu3Item4 = new JMenuItem("Report");
+    	menu3Item4.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    			makePopupMessage(threadRunner.getReport());
+    		}
+    	});
+    	menu3.add(menu3Item1);
+    	menu3.add(menu3Item2);
+    	menu3.add(menu3Item3);
+    	menu3.add(menu3Item4);
+    	menu.add(menu3);
+    	
     	//Making the help menu
     	JMenu helpMenu = new JMenu("Help");
     	JMenuItem helpItem = new JMenuItem("Help me!");
@@ -338,16 +426,21 @@ public class SimulatorView extends JFrame
 		generalTab.add(new JLabel("AllesEter creation probability"));
 		final JTextField alleseterCreationProbability = new JTextField();
 		generalTab.add(alleseterCreationProbability);
+		final JCheckBox toroidal = new JCheckBox("Wrap around the edges");
+		toroidal.setSelected(simulator.getConfig().isToroidal());
+		generalTab.add(toroidal);
 		
 		// change setting button
 		JButton change = new JButton("change setting");
 		change.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Simulator.setRabbitCreationProbability(stringToDouble(rabbitCreationProbability));
-				Simulator.setFoxCreationProbability(stringToDouble(foxCreationProbability));	
-				Simulator.setBearCreationProbability(stringToDouble(bearCreationProbability));
-				Simulator.setHunterCreationProbability(stringToDouble(hunterCreationProbability));
-				Simulator.setAllesEterCreationProbability(stringToDouble(hunterCreationProbability));
+				SimulationConfig config = simulator.getConfig();
+				config.setRabbitCreationProbability(stringToDouble(rabbitCreationProbability));
+				config.setFoxCreationProbability(stringToDouble(foxCreationProbability));	
+				config.setBearCreationProbability(stringToDouble(bearCreationProbability));
+				config.setHunterCreationProbability(stringToDouble(hunterCreationProbability));
+				config.setAllesEterCreationProbability(stringToDouble(alleseterCreationProbability));
+				config.setToroidal(toroidal.isSelected());
 			}			
 		});
 		generalTab.add(change);
@@ -356,7 +449,8 @@ public class SimulatorView extends JFrame
 		JButton setDefault = new JButton("default");
 		setDefault.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Simulator.setDefault();
+				simulator.getConfig().setDefault();
+				toroidal.setSelected(false);
 			}
 		});
 		generalTab.add(setDefault);
@@ -384,10 +478,11 @@ public class SimulatorView extends JFrame
 		JButton changeRabbit = new JButton("change setting");
 		changeRabbit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Rabbit.setBreedingAge(stringToInt(rabbitBreedingAge));
-				Rabbit.setMaxAge(stringToInt(rabbitMaxAge));		
-				Rabbit.setBreedingProbability(stringToDouble(rabbitBreedingProbability));
-				Rabbit.setMaxLitterSize(stringToInt(rabbitMaxLitterSize));		
+				SpeciesConfig config = simulator.getConfig().getSpecies(Species.RABBIT);
+				config.setBreedingAge(stringToInt(rabbitBreedingAge));
+				config.setMaxAge(stringToInt(rabbitMaxAge));		
+				config.setBreedingProbability(stringToDouble(rabbitBreedingProbability));
+				config.setMaxLitterSize(stringToInt(rabbitMaxLitterSize));		
 			}			
 		});
 		rabbitTab.add(changeRabbit);
@@ -396,7 +491,7 @@ public class SimulatorView extends JFrame
 		JButton setDefaultRabbit = new JButton("default");
 		setDefaultRabbit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Rabbit.setDefault();
+				simulator.getConfig().getSpecies(Species.RABBIT).setDefault();
 			}
 		});
 		rabbitTab.add(setDefaultRabbit);
@@ -424,10 +519,11 @@ public class SimulatorView extends JFrame
 		JButton changeFox = new JButton("change setting");
 		changeFox.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Fox.setBreedingAge(stringToInt(foxBreedingAge));
-				Fox.setMaxAge(stringToInt(foxMaxAge));		
-				Fox.setBreedingProbability(stringToDouble(foxBreedingProbability));
-				Fox.setMaxLitterSize(stringToInt(foxMaxLitterSize));		
+				SpeciesConfig config = simulator.getConfig().getSpecies(Species.FOX);
+				config.setBreedingAge(stringToInt(foxBreedingAge));
+				config.setMaxAge(stringToInt(foxMaxAge));		
+				config.setBreedingProbability(stringToDouble(foxBreedingProbability));
+				config.setMaxLitterSize(stringToInt(foxMaxLitterSize));		
 			}			
 		});
 		foxTab.add(changeFox);
@@ -436,7 +532,7 @@ public class SimulatorView extends JFrame
 		JButton setDefaultFox = new JButton("default");
 		setDefaultFox.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Fox.setDefault();
+				simulator.getConfig().getSpecies(Species.FOX).setDefault();
 			}
 		});
 		foxTab.add(setDefaultFox);	
@@ -465,10 +561,11 @@ public class SimulatorView extends JFrame
 		JButton changeBear = new JButton("change setting");
 		changeBear.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Bear.setBreedingAge(stringToInt(bearBreedingAge));
-				Bear.setMaxAge(stringToInt(bearMaxAge));		
-				Bear.setBreedingProbability(stringToDouble(bearBreedingProbability));
-				Bear.setMaxLitterSize(stringToInt(bearMaxLitterSize));		
+				SpeciesConfig config = simulator.getConfig().getSpecies(Species.BEAR);
+				config.setBreedingAge(stringToInt(bearBreedingAge));
+				config.setMaxAge(stringToInt(bearMaxAge));		
+				config.setBreedingProbability(stringToDouble(bearBreedingProbability));
+				config.setMaxLitterSize(stringToInt(bearMaxLitterSize));		
 			}			
 		});
 		bearTab.add(changeBear);
@@ -477,7 +574,7 @@ public class SimulatorView extends JFrame
 		JButton setDefaultBear = new JButton("default");
 		setDefaultBear.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				Bear.setDefault();
+				simulator.getConfig().getSpecies(Species.BEAR).setDefault();
 			}
 		});
 		bearTab.add(setDefaultBear);
@@ -505,10 +602,11 @@ public class SimulatorView extends JFrame
 				JButton changeAlleseter = new JButton("change setting");
 				changeAlleseter.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						AllesEter.setBreedingAge(stringToInt(alleseterBreedingAge));
-						AllesEter.setMaxAge(stringToInt(alleseterMaxAge));		
-						AllesEter.setBreedingProbability(stringToDouble(alleseterBreedingProbability));
-						AllesEter.setMaxLitterSize(stringToInt(alleseterMaxLitterSize));		
+						SpeciesConfig config = simulator.getConfig().getSpecies(Species.ALLESETER);
+						config.setBreedingAge(stringToInt(alleseterBreedingAge));
+						config.setMaxAge(stringToInt(alleseterMaxAge));		
+						config.setBreedingProbability(stringToDouble(alleseterBreedingProbability));
+						config.setMaxLitterSize(stringToInt(alleseterMaxLitterSize));		
 					}			
 				});
 				alleseterTab.add(changeAlleseter);
@@ -517,7 +615,7 @@ public class SimulatorView extends JFrame
 				JButton setDefaultAllesEter = new JButton("default");
 				setDefaultAllesEter.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
-						AllesEter.setDefault();
+						simulator.getConfig().getSpecies(Species.ALLESETER).setDefault();
 					}
 				});
 				alleseterTab.add(setDefaultAllesEter);
@@ -552,6 +650,27 @@ public class SimulatorView extends JFrame
     	
     }
     
+    /**
+     * Ask the user for a number.
+     * @param question The question to show.
+     * @return The number, or null if the user cancelled or did not
+     *         type a number.
+     */
+    private Double askNumber(String question)
+    {
+    	String answer = JOptionPane.showInputDialog(frame, question);
+    	if (answer == null) {
+    		return null;
+    	}
+    	try {
+    		return Double.valueOf(answer.trim());
+    	}
+    	catch (NumberFormatException e) {
+    		makePopupMessage("Geen getal: " + answer);
+    		return null;
+    	}
+    }
+    
     /**
      * Method to make a popup message
      * @param message message to be shown on screen.
@@ -670,37 +789,87 @@ public class SimulatorView extends JFrame
     }
 
     /**
-     * Show the current status of the field.
+     * Show the outcome of a simulation step.
+     * @param result The outcome of the step.
+     */
+    public void stepPerformed(StepResult result)
+    {
+        showStatus(result.getStep(), result.getField());
+    }
+
+    /**
+     * Show the current status of the field: publish the cells that
+     * changed to be drawn. This runs on the thread that changed the
+     * field and does not touch Swing.
      * @param step Which iteration step it is.
      * @param field The field whose status is to be displayed.
      */
-    public void showStatus(int step, Field field)
+    public synchronized void showStatus(int step, Field field)
     {
-        if(!frame.isVisible()) {
-            frame.setVisible(true);
-        }
-            
-        stepLabel.setText(STEP_PREFIX + step);
         stats.reset();
-        
-        fieldView.preparePaint();
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
+        String details = stats.getPopulationDetails(field);
+        frames.publish(step, field, details);
+    }
+            
+    /**
+     * Draw the cells that changed since the last frame drawn, if
+     * anything was published since, keep track of the step and frame
+     * rates, and tell the user when a step failed and stopped the run.
+     * Runs on the event dispatch thread.
+     */
+    private void renderLatestFrame()
+    {
+        Frame latest = frames.take(shownFrame);
+        if(latest != null) {
+            if(!frame.isVisible()) {
+                frame.setVisible(true);
+            }
+            // Colour by species code, so store entities without an
+            // object are drawn as well.
+            for(byte species = 0; species < Species.COUNT; species++) {
+                if(species == Species.EMPTY) {
+                    fieldView.setSpeciesColor(species, EMPTY_COLOR);
                 }
                 else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+                    fieldView.setSpeciesColor(species, getColor(latest.getSpeciesClass(species)));
                 }
             }
+            fieldView.render(latest);
+            population.setText(POPULATION_PREFIX + latest.getDetails());
+            shownFrame = latest;
+            rateFrames++;
+        }
+        long now = System.nanoTime();
+        if(now - rateStart >= RATE_INTERVAL) {
+            double seconds = (now - rateStart) / 1e9;
+            int shownStep = shownFrame != null ? shownFrame.getStep() : 0;
+            stepsPerSecond = Math.max(0, shownStep - rateStep) / seconds;
+            framesPerSecond = rateFrames / seconds;
+            rateStart = now;
+            rateStep = shownStep;
+            rateFrames = 0;
+        }
+        if(shownFrame != null) {
+            stepLabel.setText(String.format("%s%d   (%.0f steps/s, %.0f fps)", STEP_PREFIX,
+                    shownFrame.getStep(), stepsPerSecond, framesPerSecond));
+        }
+        Throwable failure = threadRunner.getFailure();
+        if(failure != null && failure != shownFailure) {
+            // Set first: the timer keeps firing while the popup is open.
+            shownFailure = failure;
+            makePopupMessage("De simulatie is gestopt: " + failure);
         }
-        stats.countFinished();
+    }
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
-        fieldView.repaint();
+    /**
+     * Turn the check of the population counters against a full scan
+     * of the field on or off. The File menu has an item for it, and
+     * the system property DEBUG_COUNTS_PROPERTY turns it on at start.
+     * @param debug true to check the counters on every refresh.
+     */
+    public void setDebugCounts(boolean debug)
+    {
+        stats.setDebug(debug);
     }
 
     /**
@@ -711,15 +880,6 @@ public class SimulatorView extends JFrame
     {
         return stats.isViable(field);
     }
-    
-    /**
-     * Method to set the simulator so it won't have to be instanced.
-     * @param simulator1 the simulator to be set.
-     */
-    public static void setSimulator(Simulator simulator1)
-    {
-    	simulator = simulator1;
-    }
   
        	/**
     	 * maak pieChart aan